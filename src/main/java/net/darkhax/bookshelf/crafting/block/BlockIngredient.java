@@ -1,14 +1,22 @@
 package net.darkhax.bookshelf.crafting.block;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
+import javax.annotation.Nullable;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Sets;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -16,7 +24,10 @@ import com.google.gson.JsonObject;
 import net.darkhax.bookshelf.Bookshelf;
 import net.minecraft.block.Block;
 import net.minecraft.network.PacketBuffer;
+import net.minecraft.tags.BlockTags;
 import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.registry.Registry;
+import net.minecraftforge.registries.ForgeRegistries;
 
 /**
  * This class provides an implementation of block ingredient. It is similar to the vanilla
@@ -29,25 +40,52 @@ public class BlockIngredient implements Predicate<Block> {
     public static final ResourceLocation TYPE_BLOCK_LIST = new ResourceLocation(Bookshelf.MOD_ID, "block_list");
     public static final ResourceLocation TYPE_BLOCK_TAG = new ResourceLocation(Bookshelf.MOD_ID, "block_tag");
     
+    /**
+     * The resolver types which are written to packets as a small number instead of their full
+     * id. The number written is the index in this list plus one, zero means the full id
+     * follows. New types must only ever be added to the end of this list.
+     */
+    private static final List<ResourceLocation> BUILT_IN_TYPES = ImmutableList.of(TYPE_BLOCK, TYPE_BLOCK_LIST, TYPE_BLOCK_TAG);
+    
     /**
      * A map of packet deserializers for block resolvers.
      */
-    private static Map<ResourceLocation, Function<PacketBuffer, IBlockResolver>> packetDeserializers = new HashMap<>();
+    private static final Map<ResourceLocation, Function<PacketBuffer, IBlockResolver>> packetDeserializers = new ConcurrentHashMap<>();
     
     /**
      * A map of json deserializers for block resolvers.
      */
-    private static Map<ResourceLocation, Function<JsonObject, IBlockResolver>> jsonDeserializers = new HashMap<>();
+    private static final Map<ResourceLocation, Function<JsonObject, IBlockResolver>> jsonDeserializers = new ConcurrentHashMap<>();
+    
+    /**
+     * An interner used to share ingredients which have the same resolvers. Ingredients are
+     * held weakly, so unused ingredients can still be garbage collected.
+     */
+    private static final Interner<BlockIngredient> interner = Interners.newWeakInterner();
     
     static {
         
-        packetDeserializers.put(TYPE_BLOCK, BlockResolver::deserialize);
-        packetDeserializers.put(TYPE_BLOCK_LIST, BlockListResolver::deserialize);
-        packetDeserializers.put(TYPE_BLOCK_TAG, BlockTagResolver::deserialize);
+        registerResolverType(TYPE_BLOCK, BlockResolver::deserialize, BlockResolver::deserialize);
+        registerResolverType(TYPE_BLOCK_LIST, BlockListResolver::deserialize, BlockListResolver::deserialize);
+        registerResolverType(TYPE_BLOCK_TAG, BlockTagResolver::deserialize, BlockTagResolver::deserialize);
+    }
+    
+    /**
+     * Registers a new type of block resolver, allowing it to be used in json and synced in
+     * packets. The id must match the type id returned by the resolvers.
+     * 
+     * @param typeId The id of the resolver type.
+     * @param jsonDeserializer A function that reads a resolver from a json object.
+     * @param packetDeserializer A function that reads a resolver from a packet buffer.
+     */
+    public static void registerResolverType (ResourceLocation typeId, Function<JsonObject, IBlockResolver> jsonDeserializer, Function<PacketBuffer, IBlockResolver> packetDeserializer) {
+        
+        if (jsonDeserializers.putIfAbsent(typeId, jsonDeserializer) != null) {
+            
+            throw new IllegalArgumentException("A block resolver type with the id " + typeId + " has already been registered!");
+        }
         
-        jsonDeserializers.put(TYPE_BLOCK, BlockResolver::deserialize);
-        jsonDeserializers.put(TYPE_BLOCK_LIST, BlockListResolver::deserialize);
-        jsonDeserializers.put(TYPE_BLOCK_TAG, BlockTagResolver::deserialize);
+        packetDeserializers.put(typeId, packetDeserializer);
     }
     
     /**
@@ -57,9 +95,18 @@ public class BlockIngredient implements Predicate<Block> {
     private final IBlockResolver[] resolvers;
     
     /**
-     * A list of all the valid blocks.
+     * The resolvers as a list. This is used to compare ingredients, so ingredients are only
+     * equal when they have the same resolvers in the same order. This keeps the order of
+     * {@link #getValidBlocks()} and {@link #serialize()} intact when ingredients are shared.
+     */
+    private final List<IBlockResolver> resolverList;
+    
+    /**
+     * The valid blocks, resolved from {@link #resolvers}. This is null until the blocks are
+     * first needed.
      */
-    private List<Block> validBlocks;
+    @Nullable
+    private volatile ResolvedBlocks validBlocks;
     
     /**
      * Creates a new block ingredient.
@@ -68,33 +115,93 @@ public class BlockIngredient implements Predicate<Block> {
      */
     public BlockIngredient(IBlockResolver... resolvers) {
         
-        this.resolvers = resolvers;
+        this(resolvers, true);
     }
     
-    @Override
-    public boolean test (Block toTest) {
+    /**
+     * Creates a new block ingredient. The resolvers are copied, so changing the array later
+     * does not change the ingredient.
+     * 
+     * @param resolvers The resolvers to use for the ingredient.
+     * @param track Whether or not the ingredient should be tracked for reloads. Ingredients
+     *        made for {@link #of(IBlockResolver...)} are only tracked if they are interned.
+     */
+    private BlockIngredient(IBlockResolver[] resolvers, boolean track) {
         
-        this.determineMatchingBlocks();
+        this.resolvers = resolvers.clone();
+        this.resolverList = Collections.unmodifiableList(Arrays.asList(this.resolvers));
         
-        if (toTest != null && this.validBlocks != null && !this.validBlocks.isEmpty()) {
+        if (track) {
             
-            return this.validBlocks.contains(toTest);
+            BlockIngredientTracker.track(this);
         }
+    }
+    
+    /**
+     * Gets a block ingredient for a list of resolvers. If an equal ingredient already exists
+     * it will be reused, so the valid blocks only need to be resolved and stored once. The
+     * deserializers use this to share ingredients between recipes.
+     * 
+     * @param resolvers The resolvers to use for the ingredient.
+     * @return A block ingredient for the resolvers.
+     */
+    public static BlockIngredient of (IBlockResolver... resolvers) {
         
-        return false;
+        final BlockIngredient ingredient = interner.intern(new BlockIngredient(resolvers, false));
+        BlockIngredientTracker.track(ingredient);
+        return ingredient;
+    }
+    
+    @Override
+    public boolean test (Block toTest) {
+        
+        return toTest != null && this.determineMatchingBlocks().matches(toTest);
     }
     
     /**
-     * Resolves the various resolvers from {@link #resolvers}. If the valid block list exists
-     * then it will be ignored. You can call {@link #invalidate()} to reset the list and allow
-     * this method to be used again.
+     * Resolves the various resolvers from {@link #resolvers}. If the valid blocks already
+     * exist they will be reused until the block tags are reloaded. You can call
+     * {@link #invalidate()} to reset the blocks and allow them to be resolved again.
+     * 
+     * @return The resolved valid blocks.
      */
-    private void determineMatchingBlocks () {
+    private ResolvedBlocks determineMatchingBlocks () {
         
-        if (this.validBlocks == null) {
+        final int tagGeneration = BlockTags.getGeneration();
+        ResolvedBlocks resolved = this.validBlocks;
+        
+        if (resolved == null || resolved.tagGeneration != tagGeneration) {
             
-            this.validBlocks = Collections.unmodifiableList(Arrays.stream(this.resolvers).flatMap(resolver -> resolver.resolveBlocks().stream()).distinct().collect(Collectors.toList()));
+            resolved = this.resolve(tagGeneration);
+            this.validBlocks = resolved;
         }
+        
+        return resolved;
+    }
+    
+    /**
+     * Resolves the valid blocks from {@link #resolvers} without storing them. This is safe to
+     * call from worker threads.
+     * 
+     * @param tagGeneration The block tag generation the blocks are being resolved for.
+     * @return The resolved valid blocks.
+     */
+    ResolvedBlocks resolve (int tagGeneration) {
+        
+        final List<Block> blocks = Arrays.stream(this.resolvers).filter(resolver -> !resolver.isPredicate()).flatMap(resolver -> resolver.resolveBlocks().stream()).distinct().collect(Collectors.toList());
+        final List<IBlockResolver> predicates = Arrays.stream(this.resolvers).filter(IBlockResolver::isPredicate).collect(Collectors.toList());
+        return new ResolvedBlocks(tagGeneration, blocks, predicates);
+    }
+    
+    /**
+     * Replaces the valid blocks with blocks that were resolved ahead of time. Used by
+     * {@link BlockIngredientTracker} to publish blocks resolved on worker threads.
+     * 
+     * @param resolved The resolved valid blocks.
+     */
+    void setValidBlocks (ResolvedBlocks resolved) {
+        
+        this.validBlocks = resolved;
     }
     
     /**
@@ -105,6 +212,18 @@ public class BlockIngredient implements Predicate<Block> {
         this.validBlocks = null;
     }
     
+    @Override
+    public boolean equals (Object obj) {
+        
+        return obj instanceof BlockIngredient && this.resolverList.equals(((BlockIngredient) obj).resolverList);
+    }
+    
+    @Override
+    public int hashCode () {
+        
+        return this.resolverList.hashCode();
+    }
+    
     /**
      * Serializes the ingredient into a json element. If there is one serializer this will be
      * an object. If there are more it will be an array.
@@ -135,10 +254,19 @@ public class BlockIngredient implements Predicate<Block> {
      */
     public void serialize (PacketBuffer buffer) {
         
-        buffer.writeInt(this.resolvers.length);
+        buffer.writeVarInt(this.resolvers.length);
         
         for (final IBlockResolver resolver : this.resolvers) {
             
+            final ResourceLocation typeId = resolver.getTypeId();
+            final int typeIndex = BUILT_IN_TYPES.indexOf(typeId);
+            buffer.writeVarInt(typeIndex + 1);
+            
+            if (typeIndex < 0) {
+                
+                buffer.writeResourceLocation(typeId);
+            }
+            
             resolver.serialize(buffer);
         }
     }
@@ -150,8 +278,7 @@ public class BlockIngredient implements Predicate<Block> {
      */
     public List<Block> getValidBlocks () {
         
-        this.determineMatchingBlocks();
-        return this.validBlocks;
+        return this.determineMatchingBlocks().getBlockList();
     }
     
     /**
@@ -162,20 +289,75 @@ public class BlockIngredient implements Predicate<Block> {
      */
     public static BlockIngredient deserialize (PacketBuffer buffer) {
         
-        final int count = buffer.readInt();
+        final int count = buffer.readVarInt();
         final IBlockResolver[] blockResolvers = new IBlockResolver[count];
         
         for (int i = 0; i < count; i++) {
             
-            final ResourceLocation typeId = ResourceLocation.tryCreate(buffer.readString());
+            final int typeTag = buffer.readVarInt();
+            final ResourceLocation typeId = typeTag == 0 ? buffer.readResourceLocation() : BUILT_IN_TYPES.get(typeTag - 1);
+            final Function<PacketBuffer, IBlockResolver> deserializer = packetDeserializers.get(typeId);
             
-            if (typeId != null) {
+            if (deserializer == null) {
                 
-                blockResolvers[i] = packetDeserializers.get(typeId).apply(buffer);
+                throw new IllegalArgumentException("No packet deserializer found for block resolver type " + typeId);
             }
+            
+            blockResolvers[i] = deserializer.apply(buffer);
         }
         
-        return new BlockIngredient(blockResolvers);
+        return of(blockResolvers);
+    }
+    
+    /**
+     * Gets the json deserializer for a resolver type.
+     * 
+     * @param typeId The id of the resolver type.
+     * @return The json deserializer for the type.
+     */
+    private static Function<JsonObject, IBlockResolver> getJsonDeserializer (@Nullable ResourceLocation typeId) {
+        
+        final Function<JsonObject, IBlockResolver> deserializer = typeId != null ? jsonDeserializers.get(typeId) : null;
+        
+        if (deserializer == null) {
+            
+            throw new IllegalArgumentException("No json deserializer found for block resolver type " + typeId);
+        }
+        
+        return deserializer;
+    }
+    
+    /**
+     * Writes a block to a packet buffer using it's numeric registry id. Registry ids are
+     * synced to clients when they connect, so this is much smaller than writing the name.
+     * 
+     * @param buffer The buffer to write to.
+     * @param block The block to write.
+     */
+    public static void writeBlock (PacketBuffer buffer, Block block) {
+        
+        buffer.writeVarInt(Registry.BLOCK.getId(block));
+    }
+    
+    /**
+     * Reads a block that was written with {@link #writeBlock(PacketBuffer, Block)}.
+     * 
+     * @param buffer The buffer to read from.
+     * @return The block that was read.
+     * @throws IllegalArgumentException If there is no block with the id that was read.
+     */
+    public static Block readBlock (PacketBuffer buffer) {
+        
+        final int id = buffer.readVarInt();
+        final Block block = Registry.BLOCK.getByValue(id);
+        
+        // The block registry returns air for unknown ids instead of null.
+        if (Registry.BLOCK.getId(block) != id) {
+            
+            throw new IllegalArgumentException("Failed to find block with ID " + id);
+        }
+        
+        return block;
     }
     
     /**
@@ -202,7 +384,7 @@ public class BlockIngredient implements Predicate<Block> {
                     
                     final JsonObject object = element.getAsJsonObject();
                     final ResourceLocation typeId = ResourceLocation.tryCreate(object.get("type").getAsString());
-                    blockResolvers[i] = jsonDeserializers.get(typeId).apply(object);
+                    blockResolvers[i] = getJsonDeserializer(typeId).apply(object);
                 }
             }
         }
@@ -212,7 +394,7 @@ public class BlockIngredient implements Predicate<Block> {
             final JsonObject jsonObject = json.getAsJsonObject();
             blockResolvers = new IBlockResolver[1];
             final ResourceLocation typeId = ResourceLocation.tryCreate(jsonObject.get("type").getAsString());
-            blockResolvers[0] = jsonDeserializers.get(typeId).apply(jsonObject);
+            blockResolvers[0] = getJsonDeserializer(typeId).apply(jsonObject);
         }
         
         else {
@@ -220,6 +402,101 @@ public class BlockIngredient implements Predicate<Block> {
             throw new IllegalArgumentException("Tried to deserialize from an unsupported json type! " + json.toString());
         }
         
-        return new BlockIngredient(blockResolvers);
+        return of(blockResolvers);
+    }
+    
+    /**
+     * Holds the result of resolving the valid blocks. Blocks from normal resolvers are kept in
+     * an identity based set so testing a block does not need to search a list. Predicate
+     * resolvers are kept separately and are only checked when a block is not in the set.
+     */
+    static final class ResolvedBlocks {
+        
+        /**
+         * A set of the blocks from normal resolvers which compares blocks by identity.
+         */
+        private final Set<Block> blockSet;
+        
+        /**
+         * The blocks from normal resolvers, in the order they were resolved.
+         */
+        private final List<Block> blocks;
+        
+        /**
+         * The resolvers which match blocks with {@link IBlockResolver#matches(Block)}.
+         */
+        private final List<IBlockResolver> predicates;
+        
+        /**
+         * An unmodifiable list of all valid blocks. This is null until it is first needed.
+         */
+        @Nullable
+        private volatile List<Block> blockList;
+        
+        /**
+         * The block tag generation the blocks were resolved for.
+         */
+        final int tagGeneration;
+        
+        private ResolvedBlocks(int tagGeneration, List<Block> blocks, List<IBlockResolver> predicates) {
+            
+            this.tagGeneration = tagGeneration;
+            this.blocks = blocks;
+            this.predicates = predicates;
+            this.blockSet = Sets.newIdentityHashSet();
+            this.blockSet.addAll(blocks);
+            
+            if (predicates.isEmpty()) {
+                
+                this.blockList = Collections.unmodifiableList(blocks);
+            }
+        }
+        
+        private boolean matches (Block block) {
+            
+            if (this.blockSet.contains(block)) {
+                
+                return true;
+            }
+            
+            for (final IBlockResolver predicate : this.predicates) {
+                
+                if (predicate.matches(block)) {
+                    
+                    return true;
+                }
+            }
+            
+            return false;
+        }
+        
+        /**
+         * Gets a list of all valid blocks. If there are predicate resolvers the registry is
+         * searched for the blocks they match the first time this is used.
+         * 
+         * @return An unmodifiable list of all valid blocks.
+         */
+        private List<Block> getBlockList () {
+            
+            List<Block> list = this.blockList;
+            
+            if (list == null) {
+                
+                final List<Block> allBlocks = new ArrayList<>(this.blocks);
+                
+                for (final Block block : ForgeRegistries.BLOCKS) {
+                    
+                    if (!this.blockSet.contains(block) && this.matches(block)) {
+                        
+                        allBlocks.add(block);
+                    }
+                }
+                
+                list = Collections.unmodifiableList(allBlocks);
+                this.blockList = list;
+            }
+            
+            return list;
+        }
     }
 }
\ No newline at end of file
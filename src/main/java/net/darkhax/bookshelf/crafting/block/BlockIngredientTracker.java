@@ -0,0 +1,222 @@
+package net.darkhax.bookshelf.crafting.block;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Sets;
+
+import net.darkhax.bookshelf.Bookshelf;
+import net.darkhax.bookshelf.crafting.block.BlockIngredient.ResolvedBlocks;
+import net.minecraft.resources.IResourceManagerReloadListener;
+import net.minecraft.tags.BlockTags;
+import net.minecraft.util.Util;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.TagsUpdatedEvent;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.fml.event.server.FMLServerAboutToStartEvent;
+
+/**
+ * Keeps track of every live {@link BlockIngredient} so they can all be refreshed when tags or
+ * data packs are reloaded. Ingredients are held with weak references, so tracking them does
+ * not keep them loaded.
+ *
+ * When the server reloads it's data, or the client receives new tags, the resolvers of every
+ * ingredient are resolved again in parallel on the worker pool. The results are published
+ * together at the start of the next server or client tick, so ingredients do not need to be
+ * resolved one at a time in the middle of a tick. If both sides reload at once, the older
+ * tasks are cancelled. Tags which change without either event are picked up by checking the
+ * tag generation at the start of each tick.
+ */
+public final class BlockIngredientTracker {
+    
+    /**
+     * The amount of ingredients resolved by each task on the worker pool.
+     */
+    private static final int BATCH_SIZE = 64;
+    
+    /**
+     * A weak set of all live ingredients. Keys are compared by identity.
+     */
+    private static final Set<BlockIngredient> ingredients = Sets.newSetFromMap(new MapMaker().weakKeys().makeMap());
+    
+    /**
+     * The tasks resolving ingredients for the last reload. This is null when there is nothing
+     * waiting to be published.
+     */
+    @Nullable
+    private static List<CompletableFuture<Map<BlockIngredient, ResolvedBlocks>>> pending;
+    
+    /**
+     * A flag shared by the {@link #pending} tasks. It is set when they are superseded by a
+     * newer reload, so they stop resolving ingredients.
+     */
+    @Nullable
+    private static AtomicBoolean pendingCancelled;
+    
+    /**
+     * The block tag generation of the last reload. If the current generation is different the
+     * tags have been reloaded without any event being fired.
+     */
+    private static int reloadedGeneration = Integer.MIN_VALUE;
+    
+    /**
+     * Registers the event listeners used to detect reloads and publish resolved ingredients.
+     * This is called once by Bookshelf.
+     */
+    public static void registerListeners () {
+        
+        MinecraftForge.EVENT_BUS.addListener(BlockIngredientTracker::onServerAboutToStart);
+        MinecraftForge.EVENT_BUS.addListener(BlockIngredientTracker::onTagsUpdated);
+        MinecraftForge.EVENT_BUS.addListener(BlockIngredientTracker::onServerTick);
+        MinecraftForge.EVENT_BUS.addListener(BlockIngredientTracker::onClientTick);
+    }
+    
+    /**
+     * Starts tracking an ingredient. This is called when an ingredient is constructed.
+     *
+     * @param ingredient The ingredient to track.
+     */
+    static void track (BlockIngredient ingredient) {
+        
+        ingredients.add(ingredient);
+    }
+    
+    /**
+     * Starts resolving every live ingredient again on the worker pool. The results will be
+     * published at the start of the next tick. Ingredients keep their current blocks until
+     * then, and any ingredient used for the new tags before that resolves itself. Tasks from a
+     * previous reload which have not been published yet are cancelled.
+     */
+    public static synchronized void reload () {
+        
+        if (pendingCancelled != null) {
+            
+            pendingCancelled.set(true);
+            pending.forEach(task -> task.cancel(false));
+        }
+        
+        final int generation = BlockTags.getGeneration();
+        final List<BlockIngredient> toResolve = new ArrayList<>(ingredients);
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+        final List<CompletableFuture<Map<BlockIngredient, ResolvedBlocks>>> tasks = new ArrayList<>();
+        
+        for (final List<BlockIngredient> batch : Lists.partition(toResolve, BATCH_SIZE)) {
+            
+            tasks.add(CompletableFuture.supplyAsync( () -> resolveBatch(batch, generation, cancelled), Util.getServerExecutor()));
+        }
+        
+        reloadedGeneration = generation;
+        pending = tasks;
+        pendingCancelled = cancelled;
+    }
+    
+    /**
+     * Publishes the ingredients resolved by the last reload. If they are still being resolved
+     * this will wait for them to finish. Results for an old tag generation are discarded.
+     */
+    private static synchronized void publish () {
+        
+        if (pending == null) {
+            
+            return;
+        }
+        
+        final List<CompletableFuture<Map<BlockIngredient, ResolvedBlocks>>> tasks = pending;
+        pending = null;
+        pendingCancelled = null;
+        
+        final Map<BlockIngredient, ResolvedBlocks> results = new IdentityHashMap<>();
+        
+        try {
+            
+            for (final CompletableFuture<Map<BlockIngredient, ResolvedBlocks>> task : tasks) {
+                
+                results.putAll(task.join());
+            }
+        }
+        
+        catch (final CompletionException e) {
+            
+            Bookshelf.LOG.error("Failed to resolve block ingredients after a reload. They will be resolved when used.", e.getCause());
+            return;
+        }
+        
+        final int generation = BlockTags.getGeneration();
+        
+        for (final Map.Entry<BlockIngredient, ResolvedBlocks> result : results.entrySet()) {
+            
+            if (result.getValue().tagGeneration == generation) {
+                
+                result.getKey().setValidBlocks(result.getValue());
+            }
+        }
+    }
+    
+    private static Map<BlockIngredient, ResolvedBlocks> resolveBatch (List<BlockIngredient> batch, int generation, AtomicBoolean cancelled) {
+        
+        final Map<BlockIngredient, ResolvedBlocks> results = new IdentityHashMap<>();
+        
+        for (final BlockIngredient ingredient : batch) {
+            
+            if (cancelled.get()) {
+                
+                break;
+            }
+            
+            results.put(ingredient, ingredient.resolve(generation));
+        }
+        
+        return results;
+    }
+    
+    /**
+     * Handles the start of a tick on either side. Reloads which were not started by an event
+     * are resolved and published straight away.
+     */
+    private static synchronized void onTickStart () {
+        
+        if (reloadedGeneration != BlockTags.getGeneration()) {
+            
+            reload();
+        }
+        
+        publish();
+    }
+    
+    private static void onServerAboutToStart (FMLServerAboutToStartEvent event) {
+        
+        // Listeners run in the order they were added, so this runs after the tags are loaded.
+        event.getServer().getResourceManager().addReloadListener((IResourceManagerReloadListener) manager -> reload());
+    }
+    
+    private static void onTagsUpdated (TagsUpdatedEvent event) {
+        
+        reload();
+    }
+    
+    private static void onServerTick (TickEvent.ServerTickEvent event) {
+        
+        if (event.phase == TickEvent.Phase.START) {
+            
+            onTickStart();
+        }
+    }
+    
+    private static void onClientTick (TickEvent.ClientTickEvent event) {
+        
+        if (event.phase == TickEvent.Phase.START) {
+            
+            onTickStart();
+        }
+    }
+}
\ No newline at end of file
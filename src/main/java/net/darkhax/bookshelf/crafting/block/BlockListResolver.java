@@ -2,8 +2,9 @@ package net.darkhax.bookshelf.crafting.block;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.List;
 
+import com.google.common.collect.ImmutableList;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -18,11 +19,15 @@ import net.minecraftforge.registries.ForgeRegistries;
  */
 public class BlockListResolver implements IBlockResolver {
     
-    private final Collection<Block> blocks;
+    /**
+     * The blocks to resolve. Two list resolvers are equal if they have the same blocks in the
+     * same order.
+     */
+    private final List<Block> blocks;
     
     public BlockListResolver(Collection<Block> blocks) {
         
-        this.blocks = Collections.unmodifiableCollection(blocks);
+        this.blocks = ImmutableList.copyOf(blocks);
     }
     
     @Override
@@ -45,15 +50,26 @@ public class BlockListResolver implements IBlockResolver {
     @Override
     public void serialize (PacketBuffer buffer) {
         
-        buffer.writeString(this.getTypeId().toString());
-        buffer.writeInt(this.blocks.size());
+        buffer.writeVarInt(this.blocks.size());
         
         for (final Block block : this.blocks) {
             
-            buffer.writeResourceLocation(block.getRegistryName());
+            BlockIngredient.writeBlock(buffer, block);
         }
     }
     
+    @Override
+    public boolean equals (Object obj) {
+        
+        return obj instanceof BlockListResolver && this.blocks.equals(((BlockListResolver) obj).blocks);
+    }
+    
+    @Override
+    public int hashCode () {
+        
+        return this.blocks.hashCode();
+    }
+    
     @Override
     public ResourceLocation getTypeId () {
         
@@ -85,20 +101,12 @@ public class BlockListResolver implements IBlockResolver {
     
     public static BlockListResolver deserialize (PacketBuffer buffer) {
         
-        final int amount = buffer.readInt();
-        final Collection<Block> blocks = new ArrayList<>();
+        final int amount = buffer.readVarInt();
+        final Collection<Block> blocks = new ArrayList<>(amount);
         
         for (int i = 0; i < amount; i++) {
             
-            final ResourceLocation id = buffer.readResourceLocation();
-            final Block block = ForgeRegistries.BLOCKS.getValue(id);
-            
-            if (block == null) {
-                
-                throw new IllegalArgumentException("Failed to find block with ID " + id.toString());
-            }
-            
-            blocks.add(block);
+            blocks.add(BlockIngredient.readBlock(buffer));
         }
         
         return new BlockListResolver(blocks);
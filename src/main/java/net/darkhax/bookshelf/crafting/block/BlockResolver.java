@@ -42,8 +42,7 @@ public class BlockResolver implements IBlockResolver {
     @Override
     public void serialize (PacketBuffer buffer) {
         
-        buffer.writeString(this.getTypeId().toString());
-        buffer.writeResourceLocation(this.block.getRegistryName());
+        BlockIngredient.writeBlock(buffer, this.block);
     }
     
     public static BlockResolver deserialize (JsonObject json) {
@@ -61,15 +60,19 @@ public class BlockResolver implements IBlockResolver {
     
     public static BlockResolver deserialize (PacketBuffer buffer) {
         
-        final ResourceLocation id = buffer.readResourceLocation();
-        final Block block = ForgeRegistries.BLOCKS.getValue(id);
+        return new BlockResolver(BlockIngredient.readBlock(buffer));
+    }
+    
+    @Override
+    public boolean equals (Object obj) {
         
-        if (block == null) {
-            
-            throw new IllegalArgumentException("Failed to find block with ID " + id.toString());
-        }
+        return obj instanceof BlockResolver && this.block == ((BlockResolver) obj).block;
+    }
+    
+    @Override
+    public int hashCode () {
         
-        return new BlockResolver(block);
+        return this.block.hashCode();
     }
     
     @Override
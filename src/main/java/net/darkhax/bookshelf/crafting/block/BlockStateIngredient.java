@@ -0,0 +1,382 @@
+package net.darkhax.bookshelf.crafting.block;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import javax.annotation.Nullable;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSyntaxException;
+
+import net.darkhax.bookshelf.Bookshelf;
+import net.darkhax.bookshelf.util.MCJsonUtils;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.state.IProperty;
+import net.minecraft.state.StateContainer;
+import net.minecraft.util.JSONUtils;
+
+/**
+ * An ingredient that matches block states rather than blocks. The blocks are matched using a
+ * {@link BlockIngredient}, and the states of those blocks can be narrowed down further by
+ * their property values. Properties use the same format as
+ * {@link MCJsonUtils#deserializeBlockState(JsonObject)}, except each property can also be an
+ * array of accepted values.
+ *
+ * <pre>
+ * {
+ *     "blocks": { "type": "bookshelf:block_tag", "tag": "minecraft:crops" },
+ *     "properties": { "age": "7" }
+ * }
+ * </pre>
+ *
+ * The matching states are compiled into a bit set indexed by block state id, so testing a
+ * state is a single bit lookup. The bit set is compiled again whenever the blocks of the
+ * block ingredient are resolved again, for example after tags are reloaded.
+ */
+public class BlockStateIngredient implements Predicate<BlockState> {
+    
+    /**
+     * The ingredient used to match the blocks of the states.
+     */
+    private final BlockIngredient blocks;
+    
+    /**
+     * A map of property names to the values accepted for that property. A state must have an
+     * accepted value for every property to match.
+     */
+    private final Map<String, List<String>> properties;
+    
+    /**
+     * The compiled states. This is null until the states are first needed.
+     */
+    @Nullable
+    private volatile CompiledStates compiledStates;
+    
+    /**
+     * Creates a new block state ingredient.
+     *
+     * @param blocks The ingredient used to match the blocks of the states.
+     * @param properties A map of property names to the values accepted for them.
+     */
+    public BlockStateIngredient(BlockIngredient blocks, Map<String, List<String>> properties) {
+        
+        this.blocks = blocks;
+        this.properties = Collections.unmodifiableMap(new LinkedHashMap<>(properties));
+    }
+    
+    @Override
+    public boolean test (BlockState toTest) {
+        
+        if (toTest == null) {
+            
+            return false;
+        }
+        
+        final int stateId = Block.getStateId(toTest);
+        return stateId >= 0 && this.getCompiledStates().states.get(stateId);
+    }
+    
+    /**
+     * Gets the block ingredient used to match the blocks of the states.
+     *
+     * @return The block ingredient for the states.
+     */
+    public BlockIngredient getBlocks () {
+        
+        return this.blocks;
+    }
+    
+    /**
+     * Invalidates the compiled states, and the blocks they were compiled from.
+     */
+    public void invalidate () {
+        
+        this.blocks.invalidate();
+        this.compiledStates = null;
+    }
+    
+    /**
+     * Gets the compiled states. If the block ingredient has resolved it's blocks again since
+     * the states were compiled, they will be compiled again.
+     *
+     * @return The compiled states.
+     */
+    private CompiledStates getCompiledStates () {
+        
+        final List<Block> validBlocks = this.blocks.getValidBlocks();
+        CompiledStates compiled = this.compiledStates;
+        
+        if (compiled == null || compiled.source != validBlocks) {
+            
+            final Map<String, Set<String>> unparsed = new LinkedHashMap<>();
+            compiled = new CompiledStates(validBlocks, this.compile(validBlocks, unparsed));
+            this.compiledStates = compiled;
+            
+            // The json was checked when it was read, so this only happens when the blocks
+            // have changed since, for example when a tag is changed by a data pack.
+            if (!unparsed.isEmpty()) {
+                
+                Bookshelf.LOG.warn("Skipped property values {} which could not be parsed for any block that has the property.", unparsed);
+            }
+        }
+        
+        return compiled;
+    }
+    
+    /**
+     * Compiles the matching states of a list of blocks into a bit set.
+     *
+     * @param validBlocks The blocks to compile states for.
+     * @param unparsed A map which is filled with the property values that could not be
+     *        parsed for any of the blocks that have the property. These values are skipped.
+     * @return A bit set where each matching state id is set.
+     */
+    private BitSet compile (List<Block> validBlocks, Map<String, Set<String>> unparsed) {
+        
+        final BitSet states = new BitSet();
+        
+        for (final Block block : validBlocks) {
+            
+            final StateContainer<Block, BlockState> container = block.getStateContainer();
+            final Map<IProperty<?>, Set<Object>> accepted = new LinkedHashMap<>();
+            boolean hasProperties = true;
+            
+            for (final Entry<String, List<String>> property : this.properties.entrySet()) {
+                
+                final IProperty<?> blockProperty = container.getProperty(property.getKey());
+                
+                // Blocks which do not have the property can not match it.
+                if (blockProperty == null) {
+                    
+                    hasProperties = false;
+                    break;
+                }
+                
+                final Set<Object> values = new HashSet<>();
+                final Set<String> propertyUnparsed = unparsed.computeIfAbsent(property.getKey(), key -> new HashSet<>(property.getValue()));
+                
+                for (final String value : property.getValue()) {
+                    
+                    final Optional<?> parsed = blockProperty.parseValue(value);
+                    
+                    if (parsed.isPresent()) {
+                        
+                        values.add(parsed.get());
+                        propertyUnparsed.remove(value);
+                    }
+                }
+                
+                accepted.put(blockProperty, values);
+            }
+            
+            if (hasProperties) {
+                
+                for (final BlockState state : container.getValidStates()) {
+                    
+                    if (matchesProperties(state, accepted)) {
+                        
+                        states.set(Block.getStateId(state));
+                    }
+                }
+            }
+        }
+        
+        unparsed.values().removeIf(Set::isEmpty);
+        return states;
+    }
+    
+    /**
+     * Serializes the ingredient into a json object.
+     *
+     * @return The serialized json object.
+     */
+    public JsonObject serialize () {
+        
+        final JsonObject json = new JsonObject();
+        json.add("blocks", this.blocks.serialize());
+        
+        if (!this.properties.isEmpty()) {
+            
+            final JsonObject propertiesJson = new JsonObject();
+            
+            for (final Entry<String, List<String>> property : this.properties.entrySet()) {
+                
+                if (property.getValue().size() == 1) {
+                    
+                    propertiesJson.addProperty(property.getKey(), property.getValue().get(0));
+                }
+                
+                else {
+                    
+                    final JsonArray values = new JsonArray();
+                    property.getValue().forEach(values::add);
+                    propertiesJson.add(property.getKey(), values);
+                }
+            }
+            
+            json.add("properties", propertiesJson);
+        }
+        
+        return json;
+    }
+    
+    /**
+     * Serializes the ingredient to a packet buffer.
+     *
+     * @param buffer The buffer to write the ingredient to.
+     */
+    public void serialize (PacketBuffer buffer) {
+        
+        this.blocks.serialize(buffer);
+        buffer.writeVarInt(this.properties.size());
+        
+        for (final Entry<String, List<String>> property : this.properties.entrySet()) {
+            
+            buffer.writeString(property.getKey());
+            buffer.writeVarInt(property.getValue().size());
+            
+            for (final String value : property.getValue()) {
+                
+                buffer.writeString(value);
+            }
+        }
+    }
+    
+    /**
+     * Deserializes a block state ingredient from a packet buffer.
+     *
+     * @param buffer The packet buffer.
+     * @return The deserialized ingredient.
+     */
+    public static BlockStateIngredient deserialize (PacketBuffer buffer) {
+        
+        final BlockIngredient blocks = BlockIngredient.deserialize(buffer);
+        final int propertyCount = buffer.readVarInt();
+        final Map<String, List<String>> properties = new LinkedHashMap<>();
+        
+        for (int i = 0; i < propertyCount; i++) {
+            
+            final String name = buffer.readString();
+            final int valueCount = buffer.readVarInt();
+            final List<String> values = new ArrayList<>(valueCount);
+            
+            for (int j = 0; j < valueCount; j++) {
+                
+                values.add(buffer.readString());
+            }
+            
+            properties.put(name, values);
+        }
+        
+        return new BlockStateIngredient(blocks, properties);
+    }
+    
+    /**
+     * Deserializes a block state ingredient from a json object.
+     *
+     * @param json The json object to read from.
+     * @return The deserialized ingredient.
+     */
+    public static BlockStateIngredient deserialize (JsonObject json) {
+        
+        if (!json.has("blocks")) {
+            
+            throw new JsonSyntaxException("Block state ingredients require a blocks member!");
+        }
+        
+        final BlockIngredient blocks = BlockIngredient.deserialize(json.get("blocks"));
+        final Map<String, List<String>> properties = new LinkedHashMap<>();
+        
+        if (json.has("properties")) {
+            
+            final JsonElement propertiesElement = json.get("properties");
+            
+            if (!propertiesElement.isJsonObject()) {
+                
+                throw new JsonSyntaxException("Expected properties to be an object. Got " + JSONUtils.toString(propertiesElement));
+            }
+            
+            for (final Entry<String, JsonElement> property : propertiesElement.getAsJsonObject().entrySet()) {
+                
+                final List<String> values = MCJsonUtils.getStrings(property.getValue());
+                
+                if (values.isEmpty()) {
+                    
+                    throw new JsonSyntaxException("Expected property value for " + property.getKey() + " to be a string or an array of strings. Got " + JSONUtils.toString(property.getValue()));
+                }
+                
+                properties.put(property.getKey(), values);
+            }
+        }
+        
+        final BlockStateIngredient ingredient = new BlockStateIngredient(blocks, properties);
+        final List<Block> validBlocks = blocks.getValidBlocks();
+        final Map<String, Set<String>> unparsed = new LinkedHashMap<>();
+        final BitSet states = ingredient.compile(validBlocks, unparsed);
+        
+        // Values which no block can parse are most likely typos.
+        if (!unparsed.isEmpty()) {
+            
+            throw new JsonSyntaxException("The property values " + unparsed + " could not be parsed for any block that has the property.");
+        }
+        
+        ingredient.compiledStates = new CompiledStates(validBlocks, states);
+        return ingredient;
+    }
+    
+    /**
+     * Checks if a state has an accepted value for every property.
+     *
+     * @param state The state to check.
+     * @param accepted A map of properties to their accepted values.
+     * @return Whether or not the state has an accepted value for every property.
+     */
+    private static boolean matchesProperties (BlockState state, Map<IProperty<?>, Set<Object>> accepted) {
+        
+        for (final Entry<IProperty<?>, Set<Object>> property : accepted.entrySet()) {
+            
+            if (!property.getValue().contains(state.get(property.getKey()))) {
+                
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Holds the compiled states, and the list of blocks they were compiled from.
+     */
+    private static final class CompiledStates {
+        
+        /**
+         * The list of blocks the states were compiled from. This is compared by identity to
+         * detect when the blocks have been resolved again.
+         */
+        private final List<Block> source;
+        
+        /**
+         * A bit set where each matching state id is set.
+         */
+        private final BitSet states;
+        
+        private CompiledStates(List<Block> source, BitSet states) {
+            
+            this.source = source;
+            this.states = states;
+        }
+    }
+}
\ No newline at end of file
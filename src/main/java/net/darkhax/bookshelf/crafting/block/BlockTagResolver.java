@@ -2,8 +2,11 @@ package net.darkhax.bookshelf.crafting.block;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
+import javax.annotation.Nullable;
+
 import com.google.gson.JsonObject;
 
 import net.minecraft.block.Block;
@@ -19,6 +22,12 @@ public class BlockTagResolver implements IBlockResolver {
     
     private final ResourceLocation tagId;
     
+    /**
+     * The blocks resolved from the tag, and the tag generation they were resolved for.
+     */
+    @Nullable
+    private volatile ResolvedTag resolved;
+    
     public BlockTagResolver(ResourceLocation tagId) {
         
         this.tagId = tagId;
@@ -27,16 +36,26 @@ public class BlockTagResolver implements IBlockResolver {
     @Override
     public Collection<Block> resolveBlocks () {
         
-        final List<Block> blocks = new ArrayList<>();
-        
-        final Tag<Block> tag = BlockTags.getCollection().get(this.tagId);
+        final int generation = BlockTags.getGeneration();
+        ResolvedTag cached = this.resolved;
         
-        if (tag != null) {
+        // The tag generation changes whenever tags are reloaded, so the cached blocks are
+        // only used if they were resolved for the current tags.
+        if (cached == null || cached.generation != generation) {
+            
+            final List<Block> blocks = new ArrayList<>();
+            final Tag<Block> tag = BlockTags.getCollection().get(this.tagId);
+            
+            if (tag != null) {
+                
+                blocks.addAll(tag.getAllElements());
+            }
             
-            blocks.addAll(tag.getAllElements());
+            cached = new ResolvedTag(generation, Collections.unmodifiableList(blocks));
+            this.resolved = cached;
         }
         
-        return blocks;
+        return cached.blocks;
     }
     
     @Override
@@ -51,10 +70,21 @@ public class BlockTagResolver implements IBlockResolver {
     @Override
     public void serialize (PacketBuffer buffer) {
         
-        buffer.writeString(this.getTypeId().toString());
         buffer.writeResourceLocation(this.tagId);
     }
     
+    @Override
+    public boolean equals (Object obj) {
+        
+        return obj instanceof BlockTagResolver && this.tagId.equals(((BlockTagResolver) obj).tagId);
+    }
+    
+    @Override
+    public int hashCode () {
+        
+        return this.tagId.hashCode();
+    }
+    
     @Override
     public ResourceLocation getTypeId () {
         
@@ -72,4 +102,19 @@ public class BlockTagResolver implements IBlockResolver {
         final ResourceLocation tagId = buffer.readResourceLocation();
         return new BlockTagResolver(tagId);
     }
+    
+    /**
+     * Holds the blocks resolved from the tag, and the tag generation they were resolved for.
+     */
+    private static final class ResolvedTag {
+        
+        private final int generation;
+        private final Collection<Block> blocks;
+        
+        private ResolvedTag(int generation, Collection<Block> blocks) {
+            
+            this.generation = generation;
+            this.blocks = blocks;
+        }
+    }
 }
\ No newline at end of file
@@ -21,7 +21,8 @@ public interface IBlockResolver {
     JsonObject serialize ();
     
     /**
-     * Serialize the resolver to a packet buffer.
+     * Serialize the resolver to a packet buffer. The type of the resolver is written by
+     * {@link BlockIngredient}, so only the data of the resolver should be written here.
      * 
      * @param buffer The buffer to write to.
      */
@@ -41,4 +42,28 @@ public interface IBlockResolver {
      * @return The type ID used to deserialize the resolver.
      */
     ResourceLocation getTypeId ();
+    
+    /**
+     * Checks if a block is matched by the resolver. Predicate resolvers should override this
+     * to test the block directly, rather than resolving a collection of blocks.
+     * 
+     * @param block The block to test.
+     * @return Whether or not the block is matched by the resolver.
+     */
+    default boolean matches (Block block) {
+        
+        return this.resolveBlocks().contains(block);
+    }
+    
+    /**
+     * Checks if the resolver matches blocks using {@link #matches(Block)} instead of
+     * {@link #resolveBlocks()}. Blocks from predicate resolvers are only searched for when a
+     * full list of valid blocks is needed, so {@link #resolveBlocks()} is not used for them.
+     * 
+     * @return Whether or not the resolver is a predicate resolver.
+     */
+    default boolean isPredicate () {
+        
+        return false;
+    }
 }
\ No newline at end of file
@@ -1,10 +1,24 @@
 package net.darkhax.bookshelf.crafting.item;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import javax.annotation.Nullable;
+
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonSyntaxException;
 
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
@@ -12,32 +26,100 @@ import net.minecraft.item.crafting.Ingredient;
 import net.minecraft.network.PacketBuffer;
 import net.minecraft.tags.ItemTags;
 import net.minecraft.util.NonNullList;
+import net.minecraft.util.registry.Registry;
 import net.minecraftforge.common.crafting.IIngredientSerializer;
 import net.minecraftforge.common.crafting.StackList;
 import net.minecraftforge.registries.ForgeRegistries;
 
 /**
- * An ingredient implementation which checks all registered items against a code-defined
- * predicate to build the list of matching items.
+ * An ingredient implementation which checks all registered items against a predicate to build
+ * the list of matching items. Predicates can be defined in code using
+ * {@link #create(Predicate)}, or in json using {@link #EXPRESSION}.
  */
 public class IngredientPredicate extends Ingredient {
     
+    /**
+     * A serializer for ingredients which define their predicate in json. The predicate is
+     * read from the predicate member using {@link ItemPredicates#deserialize(JsonElement)}.
+     */
+    public static final IIngredientSerializer<IngredientPredicate> EXPRESSION = new ExpressionSerializer();
+    
     /**
      * This ingredient implementation is polymorphic so it needs to keep reference of the
      * serializer that created it for {@link #getSerializer()}.
      */
-    private final Serializer serializer;
+    private final IIngredientSerializer<IngredientPredicate> serializer;
     
-    private IngredientPredicate(Serializer serializer, Stream<? extends Ingredient.IItemList> itemLists) {
+    /**
+     * A bit set of the registry ids of every matching item. This allows
+     * {@link #test(ItemStack)} to check a single bit instead of every matching stack. This is
+     * null until it is first needed, since the items of expression ingredients are found
+     * lazily.
+     */
+    @Nullable
+    private volatile BitSet itemIds;
+    
+    private IngredientPredicate(IIngredientSerializer<IngredientPredicate> serializer, List<ItemStack> items) {
         
-        super(itemLists);
+        this(serializer, new StackList(items));
+    }
+    
+    private IngredientPredicate(IIngredientSerializer<IngredientPredicate> serializer, Ingredient.IItemList items) {
+        
+        super(Stream.of(items));
         this.serializer = serializer;
     }
     
+    @Override
+    public boolean test (@Nullable ItemStack stack) {
+        
+        if (stack == null) {
+            
+            return false;
+        }
+        
+        // Matches the behaviour of vanilla, where an ingredient with no items only accepts
+        // empty stacks.
+        final BitSet ids = this.getItemIds();
+        
+        if (ids.isEmpty()) {
+            
+            return stack.isEmpty();
+        }
+        
+        return ids.get(Registry.ITEM.getId(stack.getItem()));
+    }
+    
+    /**
+     * Gets the bit set of matching item ids, creating it from the matching stacks if needed.
+     * 
+     * @return A bit set of the registry ids of every matching item.
+     */
+    private BitSet getItemIds () {
+        
+        BitSet ids = this.itemIds;
+        
+        if (ids == null) {
+            
+            ids = new BitSet();
+            
+            for (final ItemStack stack : this.getMatchingStacks()) {
+                
+                ids.set(Registry.ITEM.getId(stack.getItem()));
+            }
+            
+            this.itemIds = ids;
+        }
+        
+        return ids;
+    }
+    
     @Override
     public boolean isSimple () {
         
-        return false;
+        // Only the item of a stack is checked, so the ingredient can be used by the packed
+        // item matching used for recipes.
+        return true;
     }
     
     @Override
@@ -48,50 +130,164 @@ public class IngredientPredicate extends Ingredient {
     
     /**
      * Creates a new serializer that will create ingredients which use the provided predicate.
+     * The items for every serializer are found together in one pass over the item registry.
+     * The predicate is only tested on the thread that needs the items.
      * 
      * @param predicate The predicate used to check for items.
      * @return A serializer that creates ingredients for your predicate.
      */
     public static Serializer create (Predicate<Item> predicate) {
         
-        return new Serializer(predicate);
+        return create(predicate, false);
     }
     
-    static class Serializer implements IIngredientSerializer<IngredientPredicate> {
+    /**
+     * Creates a new serializer that will create ingredients which use the provided predicate.
+     * The items for every serializer are found together in one pass over the item registry.
+     * 
+     * @param predicate The predicate used to check for items.
+     * @param threadSafe Whether or not the predicate is safe to test from multiple threads.
+     *        Thread safe predicates are tested in parallel on the fork join pool. Predicates
+     *        which check tags with {@link ItemTags.Wrapper} are not thread safe.
+     * @return A serializer that creates ingredients for your predicate.
+     */
+    public static Serializer create (Predicate<Item> predicate, boolean threadSafe) {
+        
+        return new Serializer(predicate, threadSafe);
+    }
+    
+    /**
+     * Clears the ingredients the client has reused from packets. The item ids in these
+     * packets are only valid for the server they came from, so this is called when the client
+     * joins or leaves a server.
+     */
+    public static void clearSyncedIngredients () {
+        
+        for (final BaseSerializer serializer : BaseSerializer.packetSerializers) {
+            
+            serializer.synced = null;
+        }
+    }
+    
+    /**
+     * The base for serializers of predicate ingredients. The server finds the matching items
+     * from the predicate, and only the ids of those items are sent to the client.
+     */
+    abstract static class BaseSerializer implements IIngredientSerializer<IngredientPredicate> {
+        
+        /**
+         * A list of every serializer that has been created. This is used to clear their synced
+         * ingredients in {@link IngredientPredicate#clearSyncedIngredients()}.
+         */
+        private static final List<BaseSerializer> packetSerializers = new CopyOnWriteArrayList<>();
+        
+        /**
+         * The last ingredient read from a packet, and the item ids it was read from. The same
+         * ingredient is sent for every recipe that uses it, so this lets those recipes share
+         * one ingredient on the client.
+         */
+        @Nullable
+        private volatile SyncedIngredient synced;
+        
+        BaseSerializer() {
+            
+            packetSerializers.add(this);
+        }
+        
+        @Override
+        public IngredientPredicate parse (PacketBuffer buffer) {
+            
+            // This code is where the client handles reading the ingredient from the server.
+            // The client should not be trusted to generate the ingredient cache so it is
+            // instead based on the item ids sent from the server.
+            final int[] itemIds = new int[buffer.readVarInt()];
+            
+            for (int i = 0; i < itemIds.length; i++) {
+                
+                itemIds[i] = buffer.readVarInt();
+            }
+            
+            final SyncedIngredient lastSynced = this.synced;
+            
+            if (lastSynced != null && Arrays.equals(lastSynced.itemIds, itemIds)) {
+                
+                return lastSynced.ingredient;
+            }
+            
+            final List<ItemStack> items = NonNullList.create();
+            
+            for (final int itemId : itemIds) {
+                
+                final Item item = Registry.ITEM.getByValue(itemId);
+                
+                // The item registry returns air for unknown ids instead of null.
+                if (Registry.ITEM.getId(item) != itemId) {
+                    
+                    throw new IllegalArgumentException("Failed to find item with ID " + itemId);
+                }
+                
+                items.add(new ItemStack(item));
+            }
+            
+            final IngredientPredicate ingredient = new IngredientPredicate(this, items);
+            this.synced = new SyncedIngredient(itemIds, ingredient);
+            return ingredient;
+        }
+        
+        @Override
+        public void write (PacketBuffer buffer, IngredientPredicate ingredient) {
+            
+            // The matching stacks are always a single item without NBT, so only the numeric
+            // registry id of the item needs to be sent.
+            final ItemStack[] items = ingredient.getMatchingStacks();
+            buffer.writeVarInt(items.length);
+            
+            for (final ItemStack stack : items) {
+                
+                buffer.writeVarInt(Registry.ITEM.getId(stack.getItem()));
+            }
+        }
+    }
+    
+    static class Serializer extends BaseSerializer {
+        
+        /**
+         * A list of every serializer that has been created. The caches of all serializers are
+         * updated together so the item registry only needs to be checked once per reload.
+         */
+        private static final List<Serializer> serializers = new CopyOnWriteArrayList<>();
         
         /**
          * The predicate used to check for valid items.
          */
         private final Predicate<Item> itemPredicate;
         
+        /**
+         * Whether or not the predicate can be tested from multiple threads.
+         */
+        private final boolean threadSafe;
+        
         /**
          * Cache of the ingredient for performance reasons. Predicates must be deterministic so
          * this only needs to be calculated once per resource load.
          */
-        private IngredientPredicate ingredient;
+        private volatile IngredientPredicate ingredient;
         
         /**
          * The tag generation of when the {@link #ingredient} cache was generated. This is used
          * to check if the game has been reloaded and the cache must be invalidated.
          */
-        private int generation;
+        private volatile int generation;
         
         /**
          * This constructor is intentionally restricted. Use
          * {@link IngredientPredicate#create(Predicate)}.
          */
-        private Serializer(Predicate<Item> itemPredicate) {
+        private Serializer(Predicate<Item> itemPredicate, boolean threadSafe) {
             
             this.itemPredicate = itemPredicate;
-        }
-        
-        @Override
-        public IngredientPredicate parse (PacketBuffer buffer) {
-            
-            // This code is where the client handles reading the ingredient from the server.
-            // The client should not be trusted to generate the ingredient cache so it is
-            // instead based on a stream of items sent from the server.
-            return new IngredientPredicate(this, Stream.generate( () -> new Ingredient.SingleItemList(buffer.readItemStack())).limit(buffer.readVarInt()));
+            this.threadSafe = threadSafe;
+            serializers.add(this);
         }
         
         @Override
@@ -100,39 +296,278 @@ public class IngredientPredicate extends Ingredient {
             // This code is where the server creates the ingredient from the JSON data. We only
             // need one instance per data/resource load so we make and use a cache of the
             // ingredient.
-            if (this.ingredient == null || this.generation != ItemTags.getGeneration()) {
+            final int tagGeneration = ItemTags.getGeneration();
+            
+            if (this.ingredient == null || this.generation != tagGeneration) {
                 
-                this.ingredient = new IngredientPredicate(this, Stream.of(new StackList(this.getMatchingItems())));
+                updateIngredients(tagGeneration);
             }
             
             return this.ingredient;
         }
         
+        /**
+         * Updates the cached ingredient of every serializer which is out of date. All of the
+         * outdated predicates are tested together in a single pass over the item registry.
+         * 
+         * @param tagGeneration The current tag generation.
+         */
+        private static synchronized void updateIngredients (int tagGeneration) {
+            
+            final List<Serializer> outdated = serializers.stream().filter(serializer -> serializer.ingredient == null || serializer.generation != tagGeneration).collect(Collectors.toList());
+            
+            if (outdated.isEmpty()) {
+                
+                return;
+            }
+            
+            final boolean[] threadSafe = new boolean[outdated.size()];
+            
+            for (int serializer = 0; serializer < outdated.size(); serializer++) {
+                
+                threadSafe[serializer] = outdated.get(serializer).threadSafe;
+            }
+            
+            final List<List<ItemStack>> matchingItems = findMatchingItems(outdated.stream().map(serializer -> serializer.itemPredicate).collect(Collectors.toList()), threadSafe);
+            
+            for (int serializer = 0; serializer < outdated.size(); serializer++) {
+                
+                final Serializer toUpdate = outdated.get(serializer);
+                toUpdate.generation = tagGeneration;
+                toUpdate.ingredient = new IngredientPredicate(toUpdate, matchingItems.get(serializer));
+            }
+        }
+    }
+    
+    static class ExpressionSerializer extends BaseSerializer {
+        
+        /**
+         * A cache of ingredients keyed by their predicate json. Many recipes can use the same
+         * predicate, so each distinct predicate only needs to be compiled once per reload.
+         */
+        private final Map<String, IngredientPredicate> ingredients = new HashMap<>();
+        
+        /**
+         * The tag generation of when the {@link #ingredients} cache was filled.
+         */
+        private int generation;
+        
+        /**
+         * Expressions which have been parsed but have not had their items found yet. These
+         * are all found together in one pass when the items of any of them are first needed.
+         */
+        private final List<ExpressionItems> pending = new ArrayList<>();
+        
         @Override
-        public void write (PacketBuffer buffer, IngredientPredicate ingredient) {
+        public synchronized IngredientPredicate parse (JsonObject json) {
             
-            final ItemStack[] items = ingredient.getMatchingStacks();
-            buffer.writeVarInt(items.length);
+            final JsonElement expression = json.get("predicate");
             
-            for (final ItemStack stack : items) {
+            if (expression == null) {
                 
-                buffer.writeItemStack(stack);
+                throw new JsonSyntaxException("Predicate ingredients require a predicate member!");
             }
+            
+            final int tagGeneration = ItemTags.getGeneration();
+            
+            if (this.generation != tagGeneration) {
+                
+                this.ingredients.clear();
+                this.pending.clear();
+                this.generation = tagGeneration;
+            }
+            
+            final String key = expression.toString();
+            IngredientPredicate ingredient = this.ingredients.get(key);
+            
+            if (ingredient == null) {
+                
+                final ExpressionItems items = new ExpressionItems(this, ItemPredicates.deserialize(expression));
+                this.pending.add(items);
+                ingredient = new IngredientPredicate(this, items);
+                items.constructed = true;
+                this.ingredients.put(key, ingredient);
+            }
+            
+            return ingredient;
         }
         
-        private List<ItemStack> getMatchingItems () {
+        /**
+         * Finds the items for every pending expression in a single pass over the item
+         * registry. Recipes are all parsed before any of their ingredients are used, so this
+         * usually finds the items for every expression at once.
+         */
+        private synchronized void findPendingItems () {
+            
+            if (this.pending.isEmpty()) {
+                
+                return;
+            }
             
-            final List<ItemStack> matchingItems = NonNullList.create();
+            final List<List<ItemStack>> matchingItems = findMatchingItems(this.pending.stream().map(items -> items.predicate).collect(Collectors.toList()));
             
-            for (final Item item : ForgeRegistries.ITEMS.getValues()) {
+            for (int expression = 0; expression < this.pending.size(); expression++) {
                 
-                if (this.itemPredicate.test(item)) {
+                this.pending.get(expression).stacks = matchingItems.get(expression);
+            }
+            
+            this.pending.clear();
+        }
+    }
+    
+    /**
+     * The items of an expression ingredient. The items are found the first time they are
+     * needed, together with every other pending expression.
+     */
+    private static final class ExpressionItems implements Ingredient.IItemList {
+        
+        private final ExpressionSerializer serializer;
+        private final Predicate<Item> predicate;
+        
+        @Nullable
+        private volatile List<ItemStack> stacks;
+        
+        /**
+         * Whether or not the ingredient using these items has finished being constructed.
+         */
+        private volatile boolean constructed;
+        
+        private ExpressionItems(ExpressionSerializer serializer, Predicate<Item> predicate) {
+            
+            this.serializer = serializer;
+            this.predicate = predicate;
+        }
+        
+        @Override
+        public Collection<ItemStack> getStacks () {
+            
+            List<ItemStack> found = this.stacks;
+            
+            if (found == null) {
+                
+                // The ingredient constructor reads the stacks to work out if the ingredient is
+                // simple, which IngredientPredicate overrides. Finding them there would mean
+                // one pass over the item registry for every expression.
+                if (!this.constructed) {
+                    
+                    return Collections.emptyList();
+                }
+                
+                this.serializer.findPendingItems();
+                found = this.stacks;
+                
+                // Expressions from before a reload are no longer pending, so they are found
+                // on their own.
+                if (found == null) {
+                    
+                    found = findMatchingItems(Collections.singletonList(this.predicate)).get(0);
+                    this.stacks = found;
+                }
+            }
+            
+            return found;
+        }
+        
+        @Override
+        public JsonObject serialize () {
+            
+            return new StackList(this.getStacks()).serialize();
+        }
+    }
+    
+    /**
+     * Finds the items that match each predicate. None of the predicates are tested from
+     * other threads.
+     * 
+     * @param predicates The predicates to find items for.
+     * @return A list of matching items for each predicate, in the order of the predicates.
+     */
+    private static List<List<ItemStack>> findMatchingItems (List<Predicate<Item>> predicates) {
+        
+        return findMatchingItems(predicates, new boolean[predicates.size()]);
+    }
+    
+    /**
+     * Finds the items that match each predicate. All of the predicates are tested together in
+     * a single pass over the item registry. The items are split across the fork join pool for
+     * thread safe predicates, and the rest are tested on the calling thread.
+     * 
+     * @param predicates The predicates to find items for.
+     * @param threadSafe Whether or not each predicate can be tested from multiple threads.
+     * @return A list of matching items for each predicate, in the order of the predicates.
+     */
+    private static List<List<ItemStack>> findMatchingItems (List<Predicate<Item>> predicates, boolean[] threadSafe) {
+        
+        final List<Item> items = new ArrayList<>(ForgeRegistries.ITEMS.getValues());
+        final boolean[][] matches = new boolean[predicates.size()][items.size()];
+        final int[] parallel = IntStream.range(0, threadSafe.length).filter(predicate -> threadSafe[predicate]).toArray();
+        final int[] sequential = IntStream.range(0, threadSafe.length).filter(predicate -> !threadSafe[predicate]).toArray();
+        
+        if (parallel.length > 0) {
+            
+            // Each item index is only written by one task, so the results can be shared.
+            IntStream.range(0, items.size()).parallel().forEach(index -> {
+                
+                final Item item = items.get(index);
+                
+                for (final int predicate : parallel) {
                     
-                    matchingItems.add(new ItemStack(item));
+                    matches[predicate][index] = predicates.get(predicate).test(item);
+                }
+            });
+        }
+        
+        if (sequential.length > 0) {
+            
+            for (int index = 0; index < items.size(); index++) {
+                
+                final Item item = items.get(index);
+                
+                for (final int predicate : sequential) {
+                    
+                    matches[predicate][index] = predicates.get(predicate).test(item);
                 }
             }
+        }
+        
+        final List<List<ItemStack>> matchingItems = new ArrayList<>(predicates.size());
+        
+        for (final boolean[] predicateMatches : matches) {
+            
+            final List<ItemStack> predicateItems = NonNullList.create();
+            
+            for (int index = 0; index < items.size(); index++) {
+                
+                if (predicateMatches[index]) {
+                    
+                    final ItemStack stack = new ItemStack(items.get(index));
+                    
+                    // Air can not be used as an ingredient, it would make empty stacks match.
+                    if (!stack.isEmpty()) {
+                        
+                        predicateItems.add(stack);
+                    }
+                }
+            }
+            
+            matchingItems.add(predicateItems);
+        }
+        
+        return matchingItems;
+    }
+    
+    /**
+     * An ingredient read from a packet, and the item ids it was read from.
+     */
+    private static final class SyncedIngredient {
+        
+        private final int[] itemIds;
+        private final IngredientPredicate ingredient;
+        
+        private SyncedIngredient(int[] itemIds, IngredientPredicate ingredient) {
             
-            return matchingItems;
+            this.itemIds = itemIds;
+            this.ingredient = ingredient;
         }
     }
 }
\ No newline at end of file
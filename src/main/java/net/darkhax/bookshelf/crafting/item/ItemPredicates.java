@@ -0,0 +1,191 @@
+package net.darkhax.bookshelf.crafting.item;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.function.Predicate;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonSyntaxException;
+
+import net.darkhax.bookshelf.util.MCJsonUtils;
+import net.minecraft.advancements.criterion.MinMaxBounds.IntBound;
+import net.minecraft.item.Item;
+import net.minecraft.item.TieredItem;
+import net.minecraft.tags.ItemTags;
+import net.minecraft.tags.Tag;
+import net.minecraft.util.JSONUtils;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.registries.ForgeRegistries;
+
+/**
+ * Reads item predicates from json. These are used by {@link IngredientPredicate#EXPRESSION}
+ * to define predicate ingredients with data instead of code. An expression is either an
+ * array, which matches items that match any of it's elements, or an object. Every member of
+ * an object must match for an item to match the object.
+ *
+ * <ul>
+ * <li>any - An array of expressions, at least one must match.</li>
+ * <li>all - An array of expressions, all of them must match.</li>
+ * <li>not - An expression which must not match.</li>
+ * <li>item - An item id, or an array of item ids.</li>
+ * <li>class - The name of a class the item must be an instance of.</li>
+ * <li>tag - The id of an item tag the item must be in.</li>
+ * <li>harvest_level - A number or min/max range for the harvest level of a tiered item.</li>
+ * <li>max_damage - A number or min/max range for the max damage of the item.</li>
+ * <li>food - Whether or not the item must be food.</li>
+ * </ul>
+ */
+public final class ItemPredicates {
+    
+    /**
+     * Reads an item predicate from a json expression.
+     *
+     * @param json The json expression to read.
+     * @return A predicate for the expression.
+     */
+    public static Predicate<Item> deserialize (JsonElement json) {
+        
+        if (json.isJsonArray()) {
+            
+            return any(deserializeAll(json));
+        }
+        
+        else if (json.isJsonObject()) {
+            
+            final List<Predicate<Item>> terms = new ArrayList<>();
+            
+            for (final Entry<String, JsonElement> member : json.getAsJsonObject().entrySet()) {
+                
+                terms.add(deserializeTerm(member.getKey(), member.getValue()));
+            }
+            
+            return all(terms);
+        }
+        
+        throw new JsonSyntaxException("Expected item predicate to be an object or array. Got " + JSONUtils.toString(json));
+    }
+    
+    private static Predicate<Item> deserializeTerm (String name, JsonElement value) {
+        
+        switch (name) {
+            
+            case "any":
+                return any(deserializeAll(value));
+            
+            case "all":
+                return all(deserializeAll(value));
+            
+            case "not":
+                return deserialize(value).negate();
+            
+            case "item":
+                return deserializeItems(value);
+            
+            case "class":
+                return deserializeClass(JSONUtils.getString(value, name));
+            
+            case "tag":
+                final Tag<Item> tag = new ItemTags.Wrapper(new ResourceLocation(JSONUtils.getString(value, name)));
+                return tag::contains;
+            
+            case "harvest_level":
+                final IntBound harvestLevel = IntBound.fromJson(value);
+                return item -> item instanceof TieredItem && harvestLevel.test(((TieredItem) item).getTier().getHarvestLevel());
+            
+            case "max_damage":
+                final IntBound maxDamage = IntBound.fromJson(value);
+                return item -> maxDamage.test(item.getMaxDamage());
+            
+            case "food":
+                final boolean food = JSONUtils.getBoolean(value, name);
+                return item -> item.isFood() == food;
+            
+            default:
+                throw new JsonSyntaxException("Unknown item predicate term " + name);
+        }
+    }
+    
+    private static List<Predicate<Item>> deserializeAll (JsonElement json) {
+        
+        final List<Predicate<Item>> predicates = new ArrayList<>();
+        
+        for (final JsonElement element : JSONUtils.getJsonArray(json, "expression")) {
+            
+            predicates.add(deserialize(element));
+        }
+        
+        return predicates;
+    }
+    
+    private static Predicate<Item> deserializeItems (JsonElement json) {
+        
+        final List<Item> items = new ArrayList<>();
+        
+        for (final ResourceLocation id : MCJsonUtils.getIds(json)) {
+            
+            final Item item = id != null ? ForgeRegistries.ITEMS.getValue(id) : null;
+            
+            if (item == null || !id.equals(item.getRegistryName())) {
+                
+                throw new JsonSyntaxException("Failed to find item with ID " + id);
+            }
+            
+            items.add(item);
+        }
+        
+        return items::contains;
+    }
+    
+    private static Predicate<Item> deserializeClass (String className) {
+        
+        try {
+            
+            final Class<?> itemClass = Class.forName(className, false, Item.class.getClassLoader());
+            
+            if (!Item.class.isAssignableFrom(itemClass)) {
+                
+                throw new JsonSyntaxException("The class " + className + " is not an item class!");
+            }
+            
+            return itemClass::isInstance;
+        }
+        
+        catch (final ClassNotFoundException e) {
+            
+            throw new JsonSyntaxException("Could not find item class " + className, e);
+        }
+    }
+    
+    private static Predicate<Item> any (List<Predicate<Item>> predicates) {
+        
+        return item -> {
+            
+            for (final Predicate<Item> predicate : predicates) {
+                
+                if (predicate.test(item)) {
+                    
+                    return true;
+                }
+            }
+            
+            return false;
+        };
+    }
+    
+    private static Predicate<Item> all (List<Predicate<Item>> predicates) {
+        
+        return item -> {
+            
+            for (final Predicate<Item> predicate : predicates) {
+                
+                if (!predicate.test(item)) {
+                    
+                    return false;
+                }
+            }
+            
+            return true;
+        };
+    }
+}
\ No newline at end of file
@@ -1,7 +1,9 @@
 package net.darkhax.bookshelf.internal;
 
+import net.darkhax.bookshelf.crafting.item.IngredientPredicate;
 import net.minecraft.client.Minecraft;
 import net.minecraft.item.crafting.RecipeManager;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
 import net.minecraftforge.client.event.RecipesUpdatedEvent;
 import net.minecraftforge.common.MinecraftForge;
 
@@ -13,6 +15,8 @@ public class BookshelfClient extends BookshelfServer {
         
         super();
         MinecraftForge.EVENT_BUS.addListener(this::onRecipesUpdated);
+        MinecraftForge.EVENT_BUS.addListener(this::onLoggedIn);
+        MinecraftForge.EVENT_BUS.addListener(this::onLoggedOut);
     }
     
     @Override
@@ -26,6 +30,16 @@ public class BookshelfClient extends BookshelfServer {
         this.recipeManager = event.getRecipeManager();
     }
     
+    private void onLoggedIn (ClientPlayerNetworkEvent.LoggedInEvent event) {
+        
+        IngredientPredicate.clearSyncedIngredients();
+    }
+    
+    private void onLoggedOut (ClientPlayerNetworkEvent.LoggedOutEvent event) {
+        
+        IngredientPredicate.clearSyncedIngredients();
+    }
+    
     @Override
     public RecipeManager getActiveRecipeManager () {
         
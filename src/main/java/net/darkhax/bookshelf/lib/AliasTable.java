@@ -0,0 +1,184 @@
+/**
+ * This class was created by <Darkhax>. It is distributed as part of Bookshelf. You can find
+ * the original source here: https://github.com/Darkhax-Minecraft/Bookshelf
+ *
+ * Bookshelf is Open Source and distributed under the GNU Lesser General Public License version
+ * 2.1.
+ */
+package net.darkhax.bookshelf.lib;
+
+import java.util.Random;
+
+/**
+ * An implementation of Vose's alias method. The table is built in linear time from a set of
+ * integer weights, and can then be sampled in constant time regardless of how many weights
+ * there are. All of the math is done with integers so the resulting distribution exactly
+ * matches the weights that were provided. Tables are immutable once built.
+ */
+public final class AliasTable {
+    
+    /**
+     * The chance of each column keeping it's own index. This is scaled so that a value equal
+     * to {@link #total} will always keep the index.
+     */
+    private final int[] probability;
+    
+    /**
+     * The index used by each column when it does not keep it's own index.
+     */
+    private final int[] alias;
+    
+    /**
+     * The total of all weights in the table.
+     */
+    private final int total;
+    
+    /**
+     * Builds a new alias table for a set of weights.
+     *
+     * @param weights The weights to build the table from. Index in the array is the index
+     *        returned when sampling. Weights can not be negative.
+     */
+    public AliasTable(int[] weights) {
+        
+        final int size = weights.length;
+        long sum = 0;
+        
+        for (final int weight : weights) {
+            
+            if (weight < 0) {
+                
+                throw new IllegalArgumentException("Weights can not be negative! Found " + weight);
+            }
+            
+            sum += weight;
+        }
+        
+        if (sum > Integer.MAX_VALUE) {
+            
+            throw new IllegalArgumentException("The total weight " + sum + " is too large!");
+        }
+        
+        this.total = (int) sum;
+        this.probability = new int[size];
+        this.alias = new int[size];
+        
+        // Each weight is scaled by the size of the table so an average column is exactly
+        // equal to the total weight.
+        final long[] scaled = new long[size];
+        final int[] small = new int[size];
+        final int[] large = new int[size];
+        int smallCount = 0;
+        int largeCount = 0;
+        
+        for (int index = 0; index < size; index++) {
+            
+            scaled[index] = (long) weights[index] * size;
+            
+            if (scaled[index] < this.total) {
+                
+                small[smallCount++] = index;
+            }
+            
+            else {
+                
+                large[largeCount++] = index;
+            }
+        }
+        
+        // Fill every under-full column with the excess from an over-full one.
+        while (smallCount > 0 && largeCount > 0) {
+            
+            final int less = small[--smallCount];
+            final int more = large[--largeCount];
+            
+            this.probability[less] = (int) scaled[less];
+            this.alias[less] = more;
+            
+            scaled[more] = scaled[more] + scaled[less] - this.total;
+            
+            if (scaled[more] < this.total) {
+                
+                small[smallCount++] = more;
+            }
+            
+            else {
+                
+                large[largeCount++] = more;
+            }
+        }
+        
+        // Any remaining columns are exactly full.
+        while (largeCount > 0) {
+            
+            final int index = large[--largeCount];
+            this.probability[index] = this.total;
+            this.alias[index] = index;
+        }
+        
+        while (smallCount > 0) {
+            
+            final int index = small[--smallCount];
+            this.probability[index] = this.total;
+            this.alias[index] = index;
+        }
+    }
+    
+    /**
+     * Randomly selects an index from the table. Indexes with higher weight have a better
+     * likelihood of being selected.
+     *
+     * @param rand An instance of random used to pick the index.
+     * @return The selected index. If the table is empty or has no weight this will be -1.
+     */
+    public int sample (Random rand) {
+        
+        if (this.alias.length == 0 || this.total <= 0) {
+            
+            return -1;
+        }
+        
+        final int column = rand.nextInt(this.alias.length);
+        return rand.nextInt(this.total) < this.probability[column] ? column : this.alias[column];
+    }
+    
+    /**
+     * Selects an index from the table using 64 random bits instead of a Random. The upper
+     * bits pick the column and the lower bits decide between the column and it's alias. This
+     * does not allocate or change any state, so it is safe to use from many threads.
+     *
+     * @param bits A uniformly distributed long, such as a hash.
+     * @return The selected index. If the table is empty or has no weight this will be -1.
+     */
+    public int sample (long bits) {
+        
+        if (this.alias.length == 0 || this.total <= 0) {
+            
+            return -1;
+        }
+        
+        final int column = (int) ((bits >>> 32) * this.alias.length >>> 32);
+        final long threshold = (bits & 0xFFFFFFFFL) * this.total >>> 32;
+        return threshold < this.probability[column] ? column : this.alias[column];
+    }
+    
+    /**
+     * Gets the amount of indexes in the table.
+     *
+     * @return The size of the table.
+     */
+    public int size () {
+        
+        return this.alias.length;
+    }
+    
+    /**
+     * Gets the total weight of the table.
+     *
+     * @return The total weight of the table.
+     */
+    public int getTotalWeight () {
+        
+        return this.total;
+    }
+}
\ No newline at end of file
@@ -7,6 +7,11 @@
  */
 package net.darkhax.bookshelf.lib;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
 import net.minecraft.client.resources.I18n;
 import net.minecraft.world.World;
 
@@ -35,26 +40,62 @@ public class MCDate {
      */
     public static final long DAY_LENGTH = 24000L;
     
+    /**
+     * The amount of days in a year.
+     */
+    private static final int YEAR_LENGTH = Arrays.stream(MONTH_LENGTHS).sum();
+    
+    /**
+     * A lookup of the month for every day of the year. Index is the zero based day of the
+     * year.
+     */
+    private static final byte[] MONTH_FOR_DAY = new byte[YEAR_LENGTH];
+    
+    /**
+     * The zero based day of the year that each month starts on. Matching by index.
+     */
+    private static final int[] MONTH_STARTS = new int[MONTH_LENGTHS.length];
+    
+    /**
+     * A cache of the current date for each world. Dates only change once per day so they are
+     * shared rather than being constructed every time they are needed.
+     */
+    private static final Map<World, MCDate> WORLD_DATES = Collections.synchronizedMap(new WeakHashMap<>());
+    
+    static {
+        
+        int dayOfYear = 0;
+        
+        for (int month = 0; month < MONTH_LENGTHS.length; month++) {
+            
+            MONTH_STARTS[month] = dayOfYear;
+            
+            for (int day = 0; day < MONTH_LENGTHS[month]; day++) {
+                MONTH_FOR_DAY[dayOfYear++] = (byte) month;
+            }
+        }
+    }
+    
     /**
      * The total amount of days.
      */
-    private long totalDays = 0;
+    private final long totalDays;
     
     /**
      * The year represented.
      */
     // https://www.youtube.com/watch?v=gkBt7yLXyDk
-    private int year = 0;
+    private final int year;
     
     /**
      * The month represented.
      */
-    private int month = 0;
+    private final int month;
     
     /**
      * The day represented.
      */
-    private long day = 0;
+    private final long day;
     
     /**
      * Constructs a date for the current world time.
@@ -73,21 +114,58 @@ public class MCDate {
      */
     public MCDate(long time) {
         
-        this.totalDays = (time + DAY_LENGTH) / DAY_LENGTH;
-        this.day = this.totalDays;
+        this.totalDays = getTotalDays(time);
         
-        while (this.day > MONTH_LENGTHS[this.month]) {
+        if (this.totalDays > 0) {
             
-            this.day -= MONTH_LENGTHS[this.month];
+            // The date is calculated directly instead of counting up month by month.
+            final long dayOfEra = this.totalDays - 1;
+            final int dayOfYear = (int) (dayOfEra % YEAR_LENGTH);
             
-            this.month++;
+            this.year = (int) (dayOfEra / YEAR_LENGTH);
+            this.month = MONTH_FOR_DAY[dayOfYear];
+            this.day = dayOfYear - MONTH_STARTS[this.month] + 1;
+        }
+        
+        else {
             
-            if (this.month == MONTH_LENGTHS.length) {
-                
-                this.month = 0;
-                this.year++;
-            }
+            this.year = 0;
+            this.month = 0;
+            this.day = this.totalDays;
+        }
+    }
+    
+    /**
+     * Gets the current date for a world. The date is shared with anything else that asks for
+     * the date of the same world, and is only recreated when the day changes.
+     *
+     * @param world The world to get the date for.
+     * @return The current date in the world.
+     */
+    public static MCDate getDate (World world) {
+        
+        final long time = world.getGameTime();
+        final MCDate cached = WORLD_DATES.get(world);
+        
+        if (cached != null && cached.totalDays == getTotalDays(time)) {
+            
+            return cached;
         }
+        
+        final MCDate date = new MCDate(time);
+        WORLD_DATES.put(world, date);
+        return date;
+    }
+    
+    /**
+     * Gets the total amount of days for an amount of ticks.
+     *
+     * @param time The amount of ticks.
+     * @return The total amount of days.
+     */
+    private static long getTotalDays (long time) {
+        
+        return (time + DAY_LENGTH) / DAY_LENGTH;
     }
     
     /**
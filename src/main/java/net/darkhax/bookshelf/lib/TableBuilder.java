@@ -7,9 +7,21 @@
  */
 package net.darkhax.bookshelf.lib;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.RandomAccess;
 import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import com.google.common.collect.Lists;
 
 import net.darkhax.bookshelf.Bookshelf;
 
@@ -21,6 +33,11 @@ public class TableBuilder<T> {
     
     private static final String LINE_ENDING = DIVIDER_ROW + DIVIDER_ROW + DIVIDER_COLUMN;
     
+    /**
+     * The amount of entries needed before cells are computed in parallel.
+     */
+    private static final int PARALLEL_THRESHOLD = 1024;
+    
     /**
      * An internal list of entries, used to make list population much easier.
      */
@@ -36,6 +53,16 @@ public class TableBuilder<T> {
      */
     private final List<Function<? super T, String>> columnFunctions = new ArrayList<>();
     
+    /**
+     * Whether or not every cell should be computed once and stored before writing.
+     */
+    private boolean cacheCells = false;
+    
+    /**
+     * Whether or not cached cells can be computed on multiple threads.
+     */
+    private boolean parallelCells = false;
+    
     /**
      * Defines a new column for the table. This sets the name of the column, and a function
      * which is used to generate row data.
@@ -51,56 +78,55 @@ public class TableBuilder<T> {
     }
     
     /**
-     * Gets the longest width amongst all data in a column.
+     * Sets whether or not cells should be computed once and stored before the table is
+     * written. Without this the column functions are applied twice for the padded table
+     * format, once to find the column widths and again to write the cells. This is useful
+     * when the column functions are expensive, at the cost of holding every cell in memory.
      *
-     * @param columnIndex The index of the column.
-     * @param entries The entries for the table.
-     * @return The maximum width for the column.
+     * @param cacheCells Whether or not to cache cells.
      */
-    private int getMaxWidth (int columnIndex, Iterable<? extends T> entries) {
-        
-        int maxWidth = this.columnNames.get(columnIndex).length();
-        
-        final Function<? super T, String> function = this.columnFunctions.get(columnIndex);
-        
-        for (final T entry : entries) {
-            
-            final String data = function.apply(entry);
-            maxWidth = Math.max(maxWidth, data.length());
-        }
+    public void setCacheCells (boolean cacheCells) {
         
-        return maxWidth;
+        this.cacheCells = cacheCells;
     }
     
     /**
-     * Pads a string to the left.
+     * Sets whether or not cached cells can be computed on multiple threads. This only has an
+     * effect when cell caching is enabled and there are many entries. The column functions
+     * must be safe to call from other threads to use this.
      *
-     * @param string The string to pad.
-     * @param padCharacter The character to pad the string with.
-     * @param length The desired length for the string.
-     * @return The padded string.
+     * @param parallelCells Whether or not to compute cells in parallel.
      */
-    private String padLeft (String string, String padCharacter, int length) {
+    public void setParallelCells (boolean parallelCells) {
         
-        while (string.length() < length) {
-            string = padCharacter + string;
-        }
-        
-        return string;
+        this.parallelCells = parallelCells;
     }
     
     /**
-     * Gets a list of integers which represent the width for each column.
+     * Gets a list of integers which represent the width for each column. When reading from the
+     * column functions this evaluates every function for every entry, but only keeps the
+     * widths.
      *
-     * @param entries The entries for the column.
-     * @return A list of integers which represent the longest width for each column.
+     * @param rows The rows of the table.
+     * @param cells A reader for the cells of each row.
+     * @return An array of integers which represent the longest width for each column.
      */
-    private List<Integer> getColumnWidths (Iterable<? extends T> entries) {
+    private <R> int[] getColumnWidths (Iterable<R> rows, CellReader<R> cells) {
         
-        final List<Integer> columnWidths = new ArrayList<>();
+        final int columnCount = this.columnNames.size();
+        final int[] columnWidths = new int[columnCount];
         
-        for (int columnIndex = 0; columnIndex < this.columnNames.size(); columnIndex++) {
-            columnWidths.add(this.getMaxWidth(columnIndex, entries));
+        for (int columnIndex = 0; columnIndex < columnCount; columnIndex++) {
+            columnWidths[columnIndex] = this.columnNames.get(columnIndex).length();
+        }
+        
+        for (final R row : rows) {
+            
+            for (int columnIndex = 0; columnIndex < columnCount; columnIndex++) {
+                
+                final String data = cells.read(row, columnIndex);
+                columnWidths[columnIndex] = Math.max(columnWidths[columnIndex], data.length());
+            }
         }
         
         return columnWidths;
@@ -124,55 +150,307 @@ public class TableBuilder<T> {
     
     public String createString (Iterable<? extends T> entries) {
         
-        final List<Integer> widths = this.getColumnWidths(entries);
+        final StringBuilder builder = new StringBuilder();
+        
+        try {
+            
+            this.write(builder, entries, Format.TABLE);
+        }
+        
+        catch (final IOException e) {
+            
+            // StringBuilder does not throw IOExceptions.
+            throw new UncheckedIOException(e);
+        }
+        
+        return builder.toString();
+    }
+    
+    /**
+     * Writes the table to a file. The file is written as the table is generated, so the table
+     * is never held in memory all at once.
+     *
+     * @param file The file to write to. If the file exists it will be replaced.
+     * @param entries The entries for the table.
+     * @param format The format to write the table in.
+     * @throws IOException If the file could not be written.
+     */
+    public void write (Path file, Iterable<? extends T> entries, Format format) throws IOException {
+        
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            
+            this.write(writer, entries, format);
+        }
+    }
+    
+    /**
+     * Writes the table to an output, such as a Writer or StringBuilder. Rows are written
+     * directly to the output as they are generated. The {@link Format#TABLE} format needs to
+     * know the width of each column first, so it will go over the entries twice. If cell
+     * caching is enabled every cell is computed once up front instead, see
+     * {@link #setCacheCells(boolean)}.
+     *
+     * @param output The output to write the table to.
+     * @param entries The entries for the table.
+     * @param format The format to write the table in.
+     * @throws IOException If the output could not be written to.
+     */
+    public void write (Appendable output, Iterable<? extends T> entries, Format format) throws IOException {
+        
+        if (this.cacheCells) {
+            
+            final List<? extends T> list = entries instanceof List && entries instanceof RandomAccess ? (List<? extends T>) entries : Lists.newArrayList(entries);
+            final String[][] cells = this.computeCells(list);
+            this.write(output, format, () -> IntStream.range(0, list.size()).iterator(), (row, column) -> cells[column][row]);
+        }
+        
+        else {
+            
+            this.write(output, format, entries, (entry, column) -> this.columnFunctions.get(column).apply(entry));
+        }
+    }
+    
+    /**
+     * Writes the table in a given format.
+     *
+     * @param output The output to write the table to.
+     * @param format The format to write the table in.
+     * @param rows The rows of the table.
+     * @param cells A reader for the cells of each row.
+     * @throws IOException If the output could not be written to.
+     */
+    private <R> void write (Appendable output, Format format, Iterable<R> rows, CellReader<R> cells) throws IOException {
+        
+        switch (format) {
+            
+            case TABLE:
+                this.writeTable(output, rows, cells, this.getColumnWidths(rows, cells));
+                break;
+            
+            case MARKDOWN:
+                this.writeMarkdown(output, rows, cells);
+                break;
+            
+            case CSV:
+                this.writeCsv(output, rows, cells);
+                break;
+            
+            case JSON_LINES:
+                this.writeJsonLines(output, rows, cells);
+                break;
+        }
+    }
+    
+    /**
+     * Computes the text of every cell in the table, once. Cells are stored by column, so each
+     * column is a single array of strings. When parallel computation is enabled and there are
+     * enough entries, rows are split across the common fork join pool.
+     *
+     * @param entries The entries for the table.
+     * @return The text of each cell, indexed by column and then row.
+     */
+    private String[][] computeCells (List<? extends T> entries) {
+        
         final int columnCount = this.columnNames.size();
+        final int rowCount = entries.size();
+        final String[][] cells = new String[columnCount][rowCount];
         
-        final StringBuilder builder = new StringBuilder();
+        final IntConsumer computeRow = row -> {
+            
+            final T entry = entries.get(row);
+            
+            for (int columnIndex = 0; columnIndex < columnCount; columnIndex++) {
+                cells[columnIndex][row] = this.columnFunctions.get(columnIndex).apply(entry);
+            }
+        };
+        
+        if (this.parallelCells && rowCount >= PARALLEL_THRESHOLD) {
+            
+            IntStream.range(0, rowCount).parallel().forEach(computeRow);
+        }
+        
+        else {
+            
+            IntStream.range(0, rowCount).forEach(computeRow);
+        }
+        
+        return cells;
+    }
+    
+    /**
+     * Writes the table with every column padded to the same width.
+     *
+     * @param output The output to write the table to.
+     * @param rows The rows of the table.
+     * @param cells A reader for the cells of each row.
+     * @param widths The width of each column.
+     * @throws IOException If the output could not be written to.
+     */
+    private <R> void writeTable (Appendable output, Iterable<R> rows, CellReader<R> cells, int[] widths) throws IOException {
+        
+        final int columnCount = this.columnNames.size();
+        
+        // Padding is copied from these instead of being built for every cell.
+        int maxWidth = 0;
+        
+        for (final int width : widths) {
+            maxWidth = Math.max(maxWidth, width);
+        }
+        
+        final String spaces = repeat(' ', maxWidth);
+        final String dividers = repeat(DIVIDER_ROW.charAt(0), maxWidth);
         
         // Column Names
         for (int columnIndex = 0; columnIndex < columnCount; columnIndex++) {
             
-            builder.append(DIVIDER_COLUMN);
-            final String columnHeader = "%-" + widths.get(columnIndex) + "s";
-            builder.append(" " + String.format(columnHeader, this.columnNames.get(columnIndex)) + " ");
+            output.append(DIVIDER_COLUMN);
+            appendCell(output, this.columnNames.get(columnIndex), widths[columnIndex], spaces);
         }
         
-        builder.append(DIVIDER_COLUMN);
-        builder.append(Bookshelf.NEW_LINE);
+        output.append(DIVIDER_COLUMN);
+        output.append(Bookshelf.NEW_LINE);
         
         // Column Seperator
-        builder.append(DIVIDER_COLUMN);
+        output.append(DIVIDER_COLUMN);
         for (int columnIndex = 0; columnIndex < columnCount; columnIndex++) {
             
             if (columnIndex > 0) {
-                builder.append(LINE_ENDING);
+                output.append(LINE_ENDING);
             }
             
-            builder.append(this.padLeft("", DIVIDER_ROW, widths.get(columnIndex)));
+            output.append(dividers, 0, widths[columnIndex]);
         }
         
-        builder.append(LINE_ENDING);
-        builder.append(Bookshelf.NEW_LINE);
+        output.append(LINE_ENDING);
+        output.append(Bookshelf.NEW_LINE);
         
         // Column Data
-        for (final T entry : entries) {
+        for (final R row : rows) {
+            
+            for (int columnIndex = 0; columnIndex < columnCount; columnIndex++) {
+                
+                output.append(DIVIDER_COLUMN);
+                appendCell(output, cells.read(row, columnIndex), widths[columnIndex], spaces);
+            }
+            
+            output.append(DIVIDER_COLUMN);
+            output.append(Bookshelf.NEW_LINE);
+        }
+    }
+    
+    /**
+     * Writes the table as a markdown table without any padding.
+     *
+     * @param output The output to write the table to.
+     * @param rows The rows of the table.
+     * @param cells A reader for the cells of each row.
+     * @throws IOException If the output could not be written to.
+     */
+    private <R> void writeMarkdown (Appendable output, Iterable<R> rows, CellReader<R> cells) throws IOException {
+        
+        final int columnCount = this.columnNames.size();
+        
+        for (int columnIndex = 0; columnIndex < columnCount; columnIndex++) {
+            
+            output.append(DIVIDER_COLUMN).append(' ');
+            appendMarkdown(output, this.columnNames.get(columnIndex));
+            output.append(' ');
+        }
+        
+        output.append(DIVIDER_COLUMN);
+        output.append(Bookshelf.NEW_LINE);
+        
+        for (int columnIndex = 0; columnIndex < columnCount; columnIndex++) {
+            
+            output.append(DIVIDER_COLUMN).append(DIVIDER_ROW).append(DIVIDER_ROW).append(DIVIDER_ROW);
+        }
+        
+        output.append(DIVIDER_COLUMN);
+        output.append(Bookshelf.NEW_LINE);
+        
+        for (final R row : rows) {
             
             for (int columnIndex = 0; columnIndex < columnCount; columnIndex++) {
                 
-                builder.append(DIVIDER_COLUMN);
+                output.append(DIVIDER_COLUMN).append(' ');
+                appendMarkdown(output, cells.read(row, columnIndex));
+                output.append(' ');
+            }
+            
+            output.append(DIVIDER_COLUMN);
+            output.append(Bookshelf.NEW_LINE);
+        }
+    }
+    
+    /**
+     * Writes the table as comma separated values. The first row holds the column names.
+     *
+     * @param output The output to write the table to.
+     * @param rows The rows of the table.
+     * @param cells A reader for the cells of each row.
+     * @throws IOException If the output could not be written to.
+     */
+    private <R> void writeCsv (Appendable output, Iterable<R> rows, CellReader<R> cells) throws IOException {
+        
+        final int columnCount = this.columnNames.size();
+        
+        for (int columnIndex = 0; columnIndex < columnCount; columnIndex++) {
+            
+            if (columnIndex > 0) {
+                output.append(',');
+            }
+            
+            appendCsv(output, this.columnNames.get(columnIndex));
+        }
+        
+        output.append(Bookshelf.NEW_LINE);
+        
+        for (final R row : rows) {
+            
+            for (int columnIndex = 0; columnIndex < columnCount; columnIndex++) {
                 
-                final String format = "%-" + widths.get(columnIndex) + "s";
-                final Function<? super T, String> function = this.columnFunctions.get(columnIndex);
+                if (columnIndex > 0) {
+                    output.append(',');
+                }
                 
-                final String columnText = function.apply(entry);
-                builder.append(" " + String.format(format, columnText) + " ");
+                appendCsv(output, cells.read(row, columnIndex));
             }
             
-            builder.append(DIVIDER_COLUMN);
-            builder.append(Bookshelf.NEW_LINE);
+            output.append(Bookshelf.NEW_LINE);
         }
+    }
+    
+    /**
+     * Writes the table as JSON lines. Each entry is written as a JSON object on it's own line,
+     * using the column names as keys.
+     *
+     * @param output The output to write the table to.
+     * @param rows The rows of the table.
+     * @param cells A reader for the cells of each row.
+     * @throws IOException If the output could not be written to.
+     */
+    private <R> void writeJsonLines (Appendable output, Iterable<R> rows, CellReader<R> cells) throws IOException {
         
-        return builder.toString();
+        final int columnCount = this.columnNames.size();
+        
+        for (final R row : rows) {
+            
+            output.append('{');
+            
+            for (int columnIndex = 0; columnIndex < columnCount; columnIndex++) {
+                
+                if (columnIndex > 0) {
+                    output.append(',');
+                }
+                
+                appendJson(output, this.columnNames.get(columnIndex));
+                output.append(':');
+                appendJson(output, cells.read(row, columnIndex));
+            }
+            
+            output.append('}');
+            output.append(Bookshelf.NEW_LINE);
+        }
     }
     
     /**
@@ -185,4 +463,199 @@ public class TableBuilder<T> {
         
         return this.entries;
     }
+    
+    /**
+     * Appends a table cell, with a space on either side and the text padded to the right.
+     *
+     * @param output The output to append to.
+     * @param text The text of the cell.
+     * @param width The width of the column.
+     * @param spaces A string of spaces at least as long as the width.
+     * @throws IOException If the output could not be written to.
+     */
+    private static void appendCell (Appendable output, String text, int width, String spaces) throws IOException {
+        
+        output.append(' ').append(text);
+        
+        if (text.length() < width) {
+            output.append(spaces, 0, width - text.length());
+        }
+        
+        output.append(' ');
+    }
+    
+    /**
+     * Appends text to a markdown table, escaping characters that would break the table.
+     *
+     * @param output The output to append to.
+     * @param text The text to append.
+     * @throws IOException If the output could not be written to.
+     */
+    private static void appendMarkdown (Appendable output, String text) throws IOException {
+        
+        for (int index = 0; index < text.length(); index++) {
+            
+            final char character = text.charAt(index);
+            
+            if (character == '|') {
+                
+                output.append("\\|");
+            }
+            
+            else if (character == '\n' || character == '\r') {
+                
+                output.append(' ');
+            }
+            
+            else {
+                
+                output.append(character);
+            }
+        }
+    }
+    
+    /**
+     * Appends a CSV value. Values containing commas, quotes or line breaks are quoted.
+     *
+     * @param output The output to append to.
+     * @param text The text to append.
+     * @throws IOException If the output could not be written to.
+     */
+    private static void appendCsv (Appendable output, String text) throws IOException {
+        
+        boolean needsQuotes = false;
+        
+        for (int index = 0; index < text.length() && !needsQuotes; index++) {
+            
+            final char character = text.charAt(index);
+            needsQuotes = character == ',' || character == '"' || character == '\n' || character == '\r';
+        }
+        
+        if (!needsQuotes) {
+            
+            output.append(text);
+            return;
+        }
+        
+        output.append('"');
+        
+        for (int index = 0; index < text.length(); index++) {
+            
+            final char character = text.charAt(index);
+            
+            if (character == '"') {
+                output.append('"');
+            }
+            
+            output.append(character);
+        }
+        
+        output.append('"');
+    }
+    
+    /**
+     * Appends a quoted JSON string, escaping any characters that are not allowed.
+     *
+     * @param output The output to append to.
+     * @param text The text to append.
+     * @throws IOException If the output could not be written to.
+     */
+    private static void appendJson (Appendable output, String text) throws IOException {
+        
+        output.append('"');
+        
+        for (int index = 0; index < text.length(); index++) {
+            
+            final char character = text.charAt(index);
+            
+            switch (character) {
+                
+                case '"':
+                    output.append("\\\"");
+                    break;
+                
+                case '\\':
+                    output.append("\\\\");
+                    break;
+                
+                case '\n':
+                    output.append("\\n");
+                    break;
+                
+                case '\r':
+                    output.append("\\r");
+                    break;
+                
+                case '\t':
+                    output.append("\\t");
+                    break;
+                
+                default:
+                    
+                    if (character < 0x20) {
+                        
+                        output.append(String.format("\\u%04x", (int) character));
+                    }
+                    
+                    else {
+                        
+                        output.append(character);
+                    }
+            }
+        }
+        
+        output.append('"');
+    }
+    
+    /**
+     * Creates a string made of a single repeated character.
+     *
+     * @param character The character to repeat.
+     * @param length The length of the string.
+     * @return The repeated string.
+     */
+    private static String repeat (char character, int length) {
+        
+        final char[] characters = new char[length];
+        Arrays.fill(characters, character);
+        return new String(characters);
+    }
+    
+    /**
+     * Reads the text for a cell of the table.
+     *
+     * @param <R> The type used to represent a row.
+     */
+    @FunctionalInterface
+    private interface CellReader<R> {
+        
+        String read (R row, int column);
+    }
+    
+    /**
+     * The formats a table can be written in.
+     */
+    public enum Format {
+        
+        /**
+         * A table where every column is padded to the same width. This is the format used by
+         * {@link TableBuilder#toString()}.
+         */
+        TABLE,
+        
+        /**
+         * A markdown table without any padding. This can be written in a single pass.
+         */
+        MARKDOWN,
+        
+        /**
+         * Comma separated values, with the column names as the first row.
+         */
+        CSV,
+        
+        /**
+         * One JSON object per line, using the column names as keys.
+         */
+        JSON_LINES;
+    }
 }
\ No newline at end of file
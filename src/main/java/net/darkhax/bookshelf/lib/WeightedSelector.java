@@ -8,11 +8,14 @@
 package net.darkhax.bookshelf.lib;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
 import javax.annotation.Nullable;
 
+import net.darkhax.bookshelf.util.MathsUtils;
+
 public class WeightedSelector<T> {
     
     /**
@@ -25,6 +28,39 @@ public class WeightedSelector<T> {
      */
     private int total = 0;
     
+    /**
+     * Whether or not entries should be selected using an alias table. This makes selection
+     * constant time at the cost of rebuilding the table whenever the entries change.
+     */
+    private final boolean aliasSampling;
+    
+    /**
+     * The alias table for the current entries. This is built lazily when an entry is first
+     * selected, and is discarded whenever the entries are changed.
+     */
+    @Nullable
+    private AliasTable aliasTable;
+    
+    /**
+     * Constructs a selector which selects entries by scanning the entry list.
+     */
+    public WeightedSelector() {
+        
+        this(false);
+    }
+    
+    /**
+     * Constructs a selector with a specific sampling mode.
+     *
+     * @param aliasSampling Whether or not to select entries using an alias table. Tables with
+     *        many entries which are selected from often should use this. Tables which change
+     *        often should not.
+     */
+    public WeightedSelector(boolean aliasSampling) {
+        
+        this.aliasSampling = aliasSampling;
+    }
+    
     /**
      * Adds an entry to the list. The entry is created from the value and weight passed. Only
      * serves as a quality of life method.
@@ -51,6 +87,7 @@ public class WeightedSelector<T> {
         
         if (added) {
             this.total += entry.getWeight();
+            this.aliasTable = null;
         }
         
         return added;
@@ -69,11 +106,51 @@ public class WeightedSelector<T> {
         
         if (removed) {
             this.total -= entry.getWeight();
+            this.aliasTable = null;
         }
         
         return removed;
     }
     
+    /**
+     * Removes the entry at an index by moving the last entry into it's place. This avoids
+     * shifting the entries after it, but does not keep the order of the entries. The total
+     * will automatically update.
+     *
+     * @param index The index of the entry to remove.
+     * @return The entry that was removed.
+     */
+    protected WeightedEntry<T> removeEntryAt (int index) {
+        
+        final int lastIndex = this.entries.size() - 1;
+        final WeightedEntry<T> removed = this.entries.get(index);
+        
+        if (index != lastIndex) {
+            
+            this.entries.set(index, this.entries.get(lastIndex));
+        }
+        
+        this.entries.remove(lastIndex);
+        this.total -= removed.getWeight();
+        this.aliasTable = null;
+        return removed;
+    }
+    
+    /**
+     * Replaces the entry at an index. The total will automatically update.
+     *
+     * @param index The index of the entry to replace.
+     * @param entry The new entry.
+     * @return The entry that was replaced.
+     */
+    protected WeightedEntry<T> setEntryAt (int index, WeightedEntry<T> entry) {
+        
+        final WeightedEntry<T> replaced = this.entries.set(index, entry);
+        this.total += entry.getWeight() - replaced.getWeight();
+        this.aliasTable = null;
+        return replaced;
+    }
+    
     /**
      * Provides access to the list of entries. If you add or remove anything, make sure to call
      * {@link #updateTotal()} when you are done. It is critical that the total does not get
@@ -96,6 +173,12 @@ public class WeightedSelector<T> {
     @Nullable
     public WeightedEntry<T> getRandomEntry (Random rand) {
         
+        if (this.aliasSampling) {
+            
+            final int selected = this.getAliasTable().sample(rand);
+            return selected >= 0 ? this.entries.get(selected) : null;
+        }
+        
         if (!this.entries.isEmpty()) {
             
             final int selected = rand.nextInt(this.total);
@@ -114,6 +197,194 @@ public class WeightedSelector<T> {
         return null;
     }
     
+    /**
+     * Selects an entry based on a seed and a position, rather than an instance of Random. The
+     * same seed and position will always select the same entry for the same entries. This
+     * makes selection independent of the order positions are visited in, and it is safe to
+     * call from many threads at once as long as the selector is not being changed.
+     *
+     * @param worldSeed The seed of the world, or any other seed value.
+     * @param x The x position.
+     * @param y The y position.
+     * @param z The z position.
+     * @return The weighted entry that was selected.
+     */
+    @Nullable
+    public WeightedEntry<T> getEntry (long worldSeed, int x, int y, int z) {
+        
+        final long hash = MathsUtils.hashPosition(worldSeed, x, y, z);
+        
+        if (this.aliasSampling) {
+            
+            final int selected = this.getAliasTable().sample(hash);
+            return selected >= 0 ? this.entries.get(selected) : null;
+        }
+        
+        if (!this.entries.isEmpty() && this.total > 0) {
+            
+            final long selected = (hash >>> 32) * this.total >>> 32;
+            long current = 0;
+            
+            for (final WeightedEntry<T> entry : this.entries) {
+                
+                current += entry.weight;
+                
+                if (selected < current) {
+                    return entry;
+                }
+            }
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Randomly selects several entries from the list. This is a convenience method for
+     * {@link #getRandomEntries(Random, int, boolean, WeightedEntry[])} which allocates the
+     * result list.
+     *
+     * @param rand An instance of random used to weight things.
+     * @param count The amount of entries to select.
+     * @param replacement Whether or not the same entry can be selected more than once.
+     * @return A list of the selected entries. Without replacement this may be smaller than
+     *         the requested count if there are not enough entries.
+     */
+    @SuppressWarnings("unchecked")
+    public List<WeightedEntry<T>> getRandomEntries (Random rand, int count, boolean replacement) {
+        
+        final WeightedEntry<T>[] results = new WeightedEntry[count];
+        final int selected = this.getRandomEntries(rand, count, replacement, results);
+        return Arrays.asList(results).subList(0, selected);
+    }
+    
+    /**
+     * Randomly selects several entries from the list and writes them into an array. When
+     * selecting without replacement the Efraimidis-Spirakis algorithm is used, which gives
+     * every entry a random key based on it's weight and keeps the entries with the best keys.
+     * This takes a single pass over the entries no matter how many are selected, and the
+     * results are in the same order they would have been picked one at a time.
+     *
+     * @param rand An instance of random used to weight things.
+     * @param count The amount of entries to select.
+     * @param replacement Whether or not the same entry can be selected more than once.
+     * @param results The array to write the selected entries into. This must be able to hold
+     *        the requested count.
+     * @return The amount of entries that were written to the array. Without replacement this
+     *         may be less than the requested count if there are not enough entries with
+     *         weight.
+     */
+    public int getRandomEntries (Random rand, int count, boolean replacement, WeightedEntry<T>[] results) {
+        
+        if (count < 0 || count > results.length) {
+            
+            throw new IllegalArgumentException("Can not select " + count + " entries into an array of size " + results.length);
+        }
+        
+        if (count == 0 || this.entries.isEmpty() || this.total <= 0) {
+            
+            return 0;
+        }
+        
+        if (replacement) {
+            
+            for (int index = 0; index < count; index++) {
+                results[index] = this.getRandomEntry(rand);
+            }
+            
+            return count;
+        }
+        
+        // A min heap of the best keys found so far, and the index of their entries.
+        final double[] keys = new double[count];
+        final int[] selected = new int[count];
+        int heapSize = 0;
+        
+        for (int index = 0; index < this.entries.size(); index++) {
+            
+            final int weight = this.entries.get(index).getWeight();
+            
+            if (weight <= 0) {
+                
+                continue;
+            }
+            
+            // Equivalent to u^(1/weight) but does not lose precision with large weights.
+            final double key = Math.log(1d - rand.nextDouble()) / weight;
+            
+            if (heapSize < count) {
+                
+                int child = heapSize++;
+                
+                while (child > 0) {
+                    
+                    final int parent = (child - 1) >>> 1;
+                    
+                    if (keys[parent] <= key) {
+                        
+                        break;
+                    }
+                    
+                    keys[child] = keys[parent];
+                    selected[child] = selected[parent];
+                    child = parent;
+                }
+                
+                keys[child] = key;
+                selected[child] = index;
+            }
+            
+            else if (key > keys[0]) {
+                
+                siftDown(keys, selected, heapSize, key, index);
+            }
+        }
+        
+        // Remove the smallest key until the heap is empty, filling results from the back so
+        // the best key ends up first.
+        for (int remaining = heapSize; remaining > 0; remaining--) {
+            
+            results[remaining - 1] = this.entries.get(selected[0]);
+            siftDown(keys, selected, remaining - 1, keys[remaining - 1], selected[remaining - 1]);
+        }
+        
+        return heapSize;
+    }
+    
+    /**
+     * Gets the alias table for the current entries. If the table does not exist it will be
+     * built.
+     *
+     * @return The alias table for the current entries.
+     */
+    private AliasTable getAliasTable () {
+        
+        AliasTable table = this.aliasTable;
+        
+        if (table == null) {
+            
+            final int[] weights = new int[this.entries.size()];
+            
+            for (int index = 0; index < weights.length; index++) {
+                weights[index] = this.entries.get(index).getWeight();
+            }
+            
+            table = new AliasTable(weights);
+            this.aliasTable = table;
+        }
+        
+        return table;
+    }
+    
+    /**
+     * Checks if the selector uses an alias table to select entries.
+     *
+     * @return Whether or not the selector uses alias sampling.
+     */
+    public boolean usesAliasSampling () {
+        
+        return this.aliasSampling;
+    }
+    
     public int getTotalWeight () {
         
         return this.total;
@@ -128,6 +399,7 @@ public class WeightedSelector<T> {
     public int updateTotal () {
         
         this.total = 0;
+        this.aliasTable = null;
         
         for (final WeightedEntry<T> entry : this.entries) {
             this.total += entry.getWeight();
@@ -136,6 +408,47 @@ public class WeightedSelector<T> {
         return this.total;
     }
     
+    /**
+     * Places a key at the root of a min heap and moves it down until the heap is valid again.
+     *
+     * @param keys The keys of the heap.
+     * @param selected The entry indexes of the heap, matched to the keys.
+     * @param heapSize The amount of values in the heap.
+     * @param key The key to place.
+     * @param index The entry index to place with the key.
+     */
+    private static void siftDown (double[] keys, int[] selected, int heapSize, double key, int index) {
+        
+        int parent = 0;
+        
+        while (true) {
+            
+            int child = 2 * parent + 1;
+            
+            if (child >= heapSize) {
+                
+                break;
+            }
+            
+            if (child + 1 < heapSize && keys[child + 1] < keys[child]) {
+                
+                child++;
+            }
+            
+            if (key <= keys[child]) {
+                
+                break;
+            }
+            
+            keys[parent] = keys[child];
+            selected[parent] = selected[child];
+            parent = child;
+        }
+        
+        keys[parent] = key;
+        selected[parent] = index;
+    }
+    
     public static class WeightedEntry<T> {
         
         /**
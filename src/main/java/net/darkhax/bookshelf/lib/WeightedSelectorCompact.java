@@ -0,0 +1,287 @@
+/**
+ * This class was created by <Darkhax>. It is distributed as part of Bookshelf. You can find
+ * the original source here: https://github.com/Darkhax-Minecraft/Bookshelf
+ *
+ * Bookshelf is Open Source and distributed under the GNU Lesser General Public License version
+ * 2.1.
+ */
+package net.darkhax.bookshelf.lib;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.annotation.Nullable;
+
+import net.darkhax.bookshelf.util.MathsUtils;
+
+/**
+ * A weighted selector designed for very large tables. Rather than wrapping each value in an
+ * entry object, values and weights are held in parallel arrays. Weights and the total weight
+ * are longs so they can not overflow with large tables. Values are selected with a binary
+ * search over a cumulative weight array, which is rebuilt lazily after weights change.
+ */
+public class WeightedSelectorCompact<T> {
+    
+    /**
+     * The initial capacity for the backing arrays.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+    
+    /**
+     * The values held by the selector. Only the first {@link #size} values are used.
+     */
+    private Object[] values;
+    
+    /**
+     * The weights of the values, matched by index.
+     */
+    private long[] weights;
+    
+    /**
+     * The cumulative weights of the values. Each index holds the total weight of all values
+     * up to and including that index.
+     */
+    private long[] cumulative;
+    
+    /**
+     * The first index of {@link #cumulative} which is out of date. If this is equal to the
+     * size then the whole array is valid.
+     */
+    private int invalidFrom = 0;
+    
+    /**
+     * The amount of values held by the selector.
+     */
+    private int size = 0;
+    
+    /**
+     * The total weight of all values.
+     */
+    private long total = 0;
+    
+    public WeightedSelectorCompact() {
+        
+        this(DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * Constructs a new selector with an initial capacity.
+     *
+     * @param capacity The amount of values the selector can hold before it needs to grow.
+     */
+    public WeightedSelectorCompact(int capacity) {
+        
+        final int initialCapacity = Math.max(capacity, 1);
+        this.values = new Object[initialCapacity];
+        this.weights = new long[initialCapacity];
+        this.cumulative = new long[initialCapacity];
+    }
+    
+    /**
+     * Adds a value to the selector.
+     *
+     * @param value The value to add.
+     * @param weight The weight of the value. Can not be negative.
+     * @return The index of the value that was added.
+     */
+    public int addEntry (T value, long weight) {
+        
+        validateWeight(weight);
+        
+        // The new total is found first, so an overflow leaves the selector unchanged.
+        final long newTotal = Math.addExact(this.total, weight);
+        
+        if (this.size == this.values.length) {
+            
+            final int capacity = this.values.length * 2;
+            this.values = Arrays.copyOf(this.values, capacity);
+            this.weights = Arrays.copyOf(this.weights, capacity);
+            this.cumulative = Arrays.copyOf(this.cumulative, capacity);
+        }
+        
+        final int index = this.size++;
+        this.values[index] = value;
+        this.weights[index] = weight;
+        this.total = newTotal;
+        
+        // Appending can keep the cumulative array valid if it was already valid.
+        if (this.invalidFrom == index) {
+            
+            this.cumulative[index] = this.total;
+            this.invalidFrom = this.size;
+        }
+        
+        return index;
+    }
+    
+    /**
+     * Removes the value at an index. Values after the index are shifted down to keep the
+     * order of the values.
+     *
+     * @param index The index to remove.
+     * @return The value that was removed.
+     */
+    @SuppressWarnings("unchecked")
+    public T removeEntry (int index) {
+        
+        this.checkIndex(index);
+        
+        final T removed = (T) this.values[index];
+        this.total -= this.weights[index];
+        
+        final int moved = this.size - index - 1;
+        
+        if (moved > 0) {
+            
+            System.arraycopy(this.values, index + 1, this.values, index, moved);
+            System.arraycopy(this.weights, index + 1, this.weights, index, moved);
+        }
+        
+        this.size--;
+        this.values[this.size] = null;
+        this.invalidFrom = Math.min(this.invalidFrom, index);
+        
+        return removed;
+    }
+    
+    /**
+     * Changes the weight of the value at an index.
+     *
+     * @param index The index of the value.
+     * @param weight The new weight. Can not be negative.
+     */
+    public void setWeight (int index, long weight) {
+        
+        this.checkIndex(index);
+        validateWeight(weight);
+        
+        this.total = Math.addExact(this.total - this.weights[index], weight);
+        this.weights[index] = weight;
+        this.invalidFrom = Math.min(this.invalidFrom, index);
+    }
+    
+    /**
+     * Randomly selects an index from the selector. Makes use of the weighted values to give
+     * values with higher weight a better likelihood.
+     *
+     * @param rand An instance of random used to weight things.
+     * @return The selected index, or -1 if there are no values with weight.
+     */
+    public int getRandomIndex (Random rand) {
+        
+        if (this.total <= 0) {
+            
+            return -1;
+        }
+        
+        this.updateCumulative();
+        
+        final long selected = MathsUtils.nextLong(rand, this.total);
+        int low = 0;
+        int high = this.size - 1;
+        
+        // Find the first index with a cumulative weight larger than the selected value.
+        while (low < high) {
+            
+            final int middle = (low + high) >>> 1;
+            
+            if (this.cumulative[middle] > selected) {
+                
+                high = middle;
+            }
+            
+            else {
+                
+                low = middle + 1;
+            }
+        }
+        
+        return low;
+    }
+    
+    /**
+     * Randomly selects a value from the selector. Makes use of the weighted values to give
+     * values with higher weight a better likelihood.
+     *
+     * @param rand An instance of random used to weight things.
+     * @return The selected value, or null if there are no values with weight.
+     */
+    @Nullable
+    public T getRandomEntry (Random rand) {
+        
+        final int index = this.getRandomIndex(rand);
+        return index >= 0 ? this.getValue(index) : null;
+    }
+    
+    /**
+     * Gets the value at an index.
+     *
+     * @param index The index to read.
+     * @return The value at the index.
+     */
+    @SuppressWarnings("unchecked")
+    public T getValue (int index) {
+        
+        this.checkIndex(index);
+        return (T) this.values[index];
+    }
+    
+    /**
+     * Gets the weight of the value at an index.
+     *
+     * @param index The index to read.
+     * @return The weight of the value at the index.
+     */
+    public long getWeight (int index) {
+        
+        this.checkIndex(index);
+        return this.weights[index];
+    }
+    
+    /**
+     * Gets the amount of values in the selector.
+     *
+     * @return The amount of values.
+     */
+    public int size () {
+        
+        return this.size;
+    }
+    
+    public long getTotalWeight () {
+        
+        return this.total;
+    }
+    
+    /**
+     * Brings the cumulative weight array up to date, starting from the first invalid index.
+     */
+    private void updateCumulative () {
+        
+        long current = this.invalidFrom > 0 ? this.cumulative[this.invalidFrom - 1] : 0;
+        
+        for (int index = this.invalidFrom; index < this.size; index++) {
+            
+            current += this.weights[index];
+            this.cumulative[index] = current;
+        }
+        
+        this.invalidFrom = this.size;
+    }
+    
+    private void checkIndex (int index) {
+        
+        if (index < 0 || index >= this.size) {
+            
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for size " + this.size);
+        }
+    }
+    
+    private static void validateWeight (long weight) {
+        
+        if (weight < 0) {
+            
+            throw new IllegalArgumentException("Weights can not be negative! Found " + weight);
+        }
+    }
+}
\ No newline at end of file
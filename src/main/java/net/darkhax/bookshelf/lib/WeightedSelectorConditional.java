@@ -0,0 +1,333 @@
+/**
+ * This class was created by <Darkhax>. It is distributed as part of Bookshelf. You can find
+ * the original source here: https://github.com/Darkhax-Minecraft/Bookshelf
+ *
+ * Bookshelf is Open Source and distributed under the GNU Lesser General Public License version
+ * 2.1.
+ */
+package net.darkhax.bookshelf.lib;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.ToIntFunction;
+
+import javax.annotation.Nullable;
+
+import net.darkhax.bookshelf.util.MathsUtils;
+
+/**
+ * A weighted selector where the weight of each entry depends on a context value. For example
+ * the context could be a {@link net.darkhax.bookshelf.data.MoonPhase}, a biome, or a small
+ * object combining several of these. Context values must implement equals and hashCode.
+ *
+ * The first time a context is used an alias table is built for the weights in that context.
+ * Tables are cached so later selections for the same context are constant time. Only a
+ * limited amount of contexts are cached, and the least recently used context is discarded
+ * when that limit is reached.
+ *
+ * Selections can be made from multiple threads. The entries are kept in a copy on write list,
+ * so each table is built from a consistent snapshot of them.
+ */
+public class WeightedSelectorConditional<T, C> {
+    
+    /**
+     * The default amount of contexts to cache tables for.
+     */
+    private static final int DEFAULT_CACHE_SIZE = 32;
+    
+    /**
+     * The list of entries held by the selector. This is copied on write, so a table can be
+     * built from a snapshot while another thread changes the entries.
+     */
+    private final List<ConditionalEntry<T, C>> entries = new CopyOnWriteArrayList<>();
+    
+    /**
+     * A cache of compiled tables keyed by context. This map is in access order, so the first
+     * entry is always the least recently used.
+     */
+    private final Map<C, CompiledTable<T>> cache;
+    
+    /**
+     * The amount of times the entries have been changed. A table built while the entries
+     * were being changed is not cached. Guarded by {@link #cache}.
+     */
+    private int modifications = 0;
+    
+    /**
+     * Constructs a selector which caches tables for a default amount of contexts.
+     */
+    public WeightedSelectorConditional() {
+        
+        this(DEFAULT_CACHE_SIZE);
+    }
+    
+    /**
+     * Constructs a selector with a specific cache size.
+     *
+     * @param maxCachedContexts The maximum amount of contexts to cache tables for.
+     */
+    public WeightedSelectorConditional(int maxCachedContexts) {
+        
+        this.cache = new LinkedHashMap<C, CompiledTable<T>>(16, 0.75f, true) {
+            
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            protected boolean removeEldestEntry (Map.Entry<C, CompiledTable<T>> eldest) {
+                
+                return this.size() > maxCachedContexts;
+            }
+        };
+    }
+    
+    /**
+     * Adds an entry with a constant weight. The entry will have the same weight in every
+     * context.
+     *
+     * @param value The value to add.
+     * @param weight The weight of the entry.
+     * @return The entry that was added.
+     */
+    public ConditionalEntry<T, C> addEntry (T value, int weight) {
+        
+        return this.addEntry(value, context -> weight);
+    }
+    
+    /**
+     * Adds an entry with a weight that depends on the context. The weight function must
+     * always return the same weight for the same context, or {@link #invalidate()} must be
+     * called after it changes.
+     *
+     * @param value The value to add.
+     * @param weight A function which provides the weight for a context. Can not return a
+     *        negative weight.
+     * @return The entry that was added.
+     */
+    public ConditionalEntry<T, C> addEntry (T value, ToIntFunction<C> weight) {
+        
+        final ConditionalEntry<T, C> entry = new ConditionalEntry<>(value, weight);
+        this.entries.add(entry);
+        this.invalidate();
+        return entry;
+    }
+    
+    /**
+     * Removes an entry from the selector.
+     *
+     * @param entry The entry to remove.
+     * @return Whether or not the entry was removed.
+     */
+    public boolean removeEntry (ConditionalEntry<T, C> entry) {
+        
+        final boolean removed = this.entries.remove(entry);
+        
+        if (removed) {
+            this.invalidate();
+        }
+        
+        return removed;
+    }
+    
+    /**
+     * Discards all of the cached tables. They will be rebuilt the next time their context is
+     * used.
+     */
+    public void invalidate () {
+        
+        synchronized (this.cache) {
+            
+            this.modifications++;
+            this.cache.clear();
+        }
+    }
+    
+    /**
+     * Randomly selects a value for a context. Makes use of the weights for that context to
+     * give values with higher weight a better likelihood.
+     *
+     * @param context The context to select a value for.
+     * @param rand An instance of random used to weight things.
+     * @return The value that was selected, or null if nothing has weight in the context.
+     */
+    @Nullable
+    public T getRandomEntry (C context, Random rand) {
+        
+        return this.getTable(context).get(rand);
+    }
+    
+    /**
+     * Selects a value for a context based on a seed and a position. See
+     * {@link WeightedSelector#getEntry(long, int, int, int)}.
+     *
+     * @param context The context to select a value for.
+     * @param worldSeed The seed of the world, or any other seed value.
+     * @param x The x position.
+     * @param y The y position.
+     * @param z The z position.
+     * @return The value that was selected, or null if nothing has weight in the context.
+     */
+    @Nullable
+    public T getEntry (C context, long worldSeed, int x, int y, int z) {
+        
+        return this.getTable(context).get(MathsUtils.hashPosition(worldSeed, x, y, z));
+    }
+    
+    /**
+     * Gets the total weight of all entries in a context.
+     *
+     * @param context The context to get the weight for.
+     * @return The total weight in that context.
+     */
+    public int getTotalWeight (C context) {
+        
+        return this.getTable(context).table.getTotalWeight();
+    }
+    
+    /**
+     * Provides access to the list of entries. If you add or remove anything, make sure to call
+     * {@link #invalidate()} when you are done.
+     *
+     * @return A list of conditional entries.
+     */
+    public List<ConditionalEntry<T, C>> getEntries () {
+        
+        return this.entries;
+    }
+    
+    /**
+     * Gets the compiled table for a context. If the table is not cached it will be built.
+     *
+     * @param context The context to get a table for.
+     * @return The compiled table for the context.
+     */
+    private CompiledTable<T> getTable (C context) {
+        
+        final int expectedModifications;
+        
+        synchronized (this.cache) {
+            
+            final CompiledTable<T> cached = this.cache.get(context);
+            
+            if (cached != null) {
+                
+                return cached;
+            }
+            
+            expectedModifications = this.modifications;
+        }
+        
+        // The table is built outside of the lock so other contexts are not blocked. The
+        // snapshot is taken after the modification count, so any change after it is seen.
+        final CompiledTable<T> compiled = new CompiledTable<>(new ArrayList<>(this.entries), context);
+        
+        synchronized (this.cache) {
+            
+            // If the entries changed while the table was being built it may be out of date,
+            // so it is only used for this selection.
+            if (this.modifications != expectedModifications) {
+                
+                return compiled;
+            }
+            
+            final CompiledTable<T> existing = this.cache.putIfAbsent(context, compiled);
+            return existing != null ? existing : compiled;
+        }
+    }
+    
+    /**
+     * An alias table and the values it was built for, compiled for a single context.
+     */
+    private static final class CompiledTable<T> {
+        
+        /**
+         * The values at the time the table was built.
+         */
+        private final Object[] values;
+        
+        /**
+         * An alias table built from the weights in the context.
+         */
+        private final AliasTable table;
+        
+        private <C> CompiledTable(List<ConditionalEntry<T, C>> entries, C context) {
+            
+            this.values = new Object[entries.size()];
+            final int[] weights = new int[this.values.length];
+            
+            for (int index = 0; index < weights.length; index++) {
+                
+                final ConditionalEntry<T, C> entry = entries.get(index);
+                this.values[index] = entry.getEntry();
+                weights[index] = entry.getWeight(context);
+            }
+            
+            this.table = new AliasTable(weights);
+        }
+        
+        @Nullable
+        @SuppressWarnings("unchecked")
+        private T get (Random rand) {
+            
+            final int selected = this.table.sample(rand);
+            return selected >= 0 ? (T) this.values[selected] : null;
+        }
+        
+        @Nullable
+        @SuppressWarnings("unchecked")
+        private T get (long bits) {
+            
+            final int selected = this.table.sample(bits);
+            return selected >= 0 ? (T) this.values[selected] : null;
+        }
+    }
+    
+    public static class ConditionalEntry<T, C> {
+        
+        /**
+         * The outcome being represented by the entry.
+         */
+        private final T entry;
+        
+        /**
+         * A function which provides the weight of the entry for a context.
+         */
+        private final ToIntFunction<C> weight;
+        
+        /**
+         * Constructs a new ConditionalEntry.
+         *
+         * @param entry The outcome to represent with the entry.
+         * @param weight A function which provides the weight of the entry for a context.
+         */
+        public ConditionalEntry(T entry, ToIntFunction<C> weight) {
+            
+            this.entry = entry;
+            this.weight = weight;
+        }
+        
+        /**
+         * Gets the outcome represented by the entry.
+         *
+         * @return The outcome represented by the entry.
+         */
+        public T getEntry () {
+            
+            return this.entry;
+        }
+        
+        /**
+         * Gets the weight of the entry for a context.
+         *
+         * @param context The context to get the weight for.
+         * @return The weight of the entry in that context.
+         */
+        public int getWeight (C context) {
+            
+            return this.weight.applyAsInt(context);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,316 @@
+/**
+ * This class was created by <Darkhax>. It is distributed as part of Bookshelf. You can find
+ * the original source here: https://github.com/Darkhax-Minecraft/Bookshelf
+ *
+ * Bookshelf is Open Source and distributed under the GNU Lesser General Public License version
+ * 2.1.
+ */
+package net.darkhax.bookshelf.lib;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import javax.annotation.Nullable;
+
+import net.darkhax.bookshelf.util.MathsUtils;
+
+/**
+ * A weighted selector for entries which have their weight changed often. Weights are held in
+ * a binary indexed tree, which allows weights to be changed, entries to be added or removed,
+ * and entries to be selected all in logarithmic time. Unlike {@link WeightedSelector} entries
+ * should only be changed using the methods of the selector.
+ */
+public class WeightedSelectorDynamic<T> {
+    
+    /**
+     * The initial capacity for the backing arrays.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+    
+    /**
+     * An array of entries held by the selector. Only the first {@link #size} values are used.
+     */
+    private DynamicEntry<T>[] entries;
+    
+    /**
+     * The binary indexed tree of weights. This array is one based, so index 0 is never used.
+     */
+    private long[] tree;
+    
+    /**
+     * The amount of entries held by the selector.
+     */
+    private int size = 0;
+    
+    /**
+     * The total weight of all entries.
+     */
+    private long total = 0;
+    
+    public WeightedSelectorDynamic() {
+        
+        this(DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * Constructs a new selector with an initial capacity.
+     *
+     * @param capacity The amount of entries the selector can hold before it needs to grow.
+     */
+    @SuppressWarnings("unchecked")
+    public WeightedSelectorDynamic(int capacity) {
+        
+        this.entries = new DynamicEntry[Math.max(capacity, 1)];
+        this.tree = new long[this.entries.length + 1];
+    }
+    
+    /**
+     * Adds an entry to the selector.
+     *
+     * @param value The value to add.
+     * @param weight The weight of the entry. Can not be negative.
+     * @return The entry that was added. This is used to update or remove the entry later.
+     */
+    public DynamicEntry<T> addEntry (T value, int weight) {
+        
+        validateWeight(weight);
+        
+        if (this.size == this.entries.length) {
+            
+            this.entries = Arrays.copyOf(this.entries, this.entries.length * 2);
+            this.tree = Arrays.copyOf(this.tree, this.entries.length + 1);
+        }
+        
+        final DynamicEntry<T> entry = new DynamicEntry<>(this, value, weight, this.size);
+        this.entries[this.size] = entry;
+        this.size++;
+        
+        // The new node covers a range ending at the new entry. Everything in that range before
+        // the new entry is already in the tree, so it can be found from the prefix sums.
+        final int node = this.size;
+        this.tree[node] = weight + this.getPrefixSum(node - 1) - this.getPrefixSum(node - (node & -node));
+        this.total += weight;
+        
+        return entry;
+    }
+    
+    /**
+     * Removes an entry from the selector. The last entry is moved into the slot of the
+     * removed entry, so the order of entries is not kept.
+     *
+     * @param entry The entry to remove.
+     * @return Whether or not the entry was removed.
+     */
+    public boolean removeEntry (DynamicEntry<T> entry) {
+        
+        if (!this.isHeld(entry)) {
+            
+            return false;
+        }
+        
+        final int index = entry.index;
+        final int lastIndex = this.size - 1;
+        
+        if (index != lastIndex) {
+            
+            final DynamicEntry<T> last = this.entries[lastIndex];
+            this.updateTree(index, last.weight - entry.weight);
+            this.entries[index] = last;
+            last.index = index;
+        }
+        
+        // The last node only ever covers the last entry's range, so dropping it is enough.
+        this.tree[this.size] = 0;
+        this.entries[lastIndex] = null;
+        this.size--;
+        this.total -= entry.weight;
+        entry.index = -1;
+        
+        return true;
+    }
+    
+    /**
+     * Changes the weight of an entry held by the selector.
+     *
+     * @param entry The entry to change.
+     * @param weight The new weight of the entry. Can not be negative.
+     * @return Whether or not the weight was changed.
+     */
+    public boolean setWeight (DynamicEntry<T> entry, int weight) {
+        
+        validateWeight(weight);
+        
+        if (!this.isHeld(entry)) {
+            
+            return false;
+        }
+        
+        final int delta = weight - entry.weight;
+        this.updateTree(entry.index, delta);
+        this.total += delta;
+        entry.weight = weight;
+        return true;
+    }
+    
+    /**
+     * Randomly selects an entry from the selector. Makes use of the weighted values to give
+     * values with higher weight a better likelihood.
+     *
+     * @param rand An instance of random used to weight things.
+     * @return The entry that was selected. If there are no entries with weight this will be
+     *         null.
+     */
+    @Nullable
+    public DynamicEntry<T> getRandomEntry (Random rand) {
+        
+        if (this.total <= 0) {
+            
+            return null;
+        }
+        
+        long selected = MathsUtils.nextLong(rand, this.total);
+        int position = 0;
+        
+        // Walk down the tree, skipping over every node that ends before the selected value.
+        for (int step = Integer.highestOneBit(this.size); step > 0; step >>= 1) {
+            
+            final int next = position + step;
+            
+            if (next <= this.size && this.tree[next] <= selected) {
+                
+                position = next;
+                selected -= this.tree[next];
+            }
+        }
+        
+        return this.entries[position];
+    }
+    
+    /**
+     * Provides access to the entries held by the selector. This list can not be modified, use
+     * the methods of the selector instead.
+     *
+     * @return A list of the held entries.
+     */
+    public List<DynamicEntry<T>> getEntries () {
+        
+        return Collections.unmodifiableList(Arrays.asList(this.entries).subList(0, this.size));
+    }
+    
+    /**
+     * Gets the amount of entries in the selector.
+     *
+     * @return The amount of entries.
+     */
+    public int size () {
+        
+        return this.size;
+    }
+    
+    public long getTotalWeight () {
+        
+        return this.total;
+    }
+    
+    /**
+     * Checks if an entry is currently held by this selector.
+     *
+     * @param entry The entry to check.
+     * @return Whether or not the entry is held by this selector.
+     */
+    private boolean isHeld (DynamicEntry<T> entry) {
+        
+        return entry != null && entry.selector == this && entry.index >= 0;
+    }
+    
+    /**
+     * Adds a value to the weight of an entry in the tree.
+     *
+     * @param index The index of the entry.
+     * @param delta The amount to add to the weight.
+     */
+    private void updateTree (int index, long delta) {
+        
+        for (int node = index + 1; node <= this.size; node += node & -node) {
+            this.tree[node] += delta;
+        }
+    }
+    
+    /**
+     * Gets the sum of the weights for the first entries.
+     *
+     * @param count The amount of entries to sum.
+     * @return The sum of their weights.
+     */
+    private long getPrefixSum (int count) {
+        
+        long sum = 0;
+        
+        for (int node = count; node > 0; node -= node & -node) {
+            sum += this.tree[node];
+        }
+        
+        return sum;
+    }
+    
+    private static void validateWeight (int weight) {
+        
+        if (weight < 0) {
+            
+            throw new IllegalArgumentException("Weights can not be negative! Found " + weight);
+        }
+    }
+    
+    public static class DynamicEntry<T> {
+        
+        /**
+         * The selector which holds the entry.
+         */
+        private final WeightedSelectorDynamic<T> selector;
+        
+        /**
+         * The outcome being represented by the entry.
+         */
+        private final T entry;
+        
+        /**
+         * The weight of the entry.
+         */
+        private int weight;
+        
+        /**
+         * The index of the entry in the selector. This will be -1 after it is removed.
+         */
+        private int index;
+        
+        private DynamicEntry(WeightedSelectorDynamic<T> selector, T entry, int weight, int index) {
+            
+            this.selector = selector;
+            this.entry = entry;
+            this.weight = weight;
+            this.index = index;
+        }
+        
+        /**
+         * Gets the outcome represented by the entry.
+         *
+         * @return The outcome represented by the entry.
+         */
+        public T getEntry () {
+            
+            return this.entry;
+        }
+        
+        /**
+         * Gets the current weight of the entry.
+         *
+         * @return The weight of the entry.
+         */
+        public int getWeight () {
+            
+            return this.weight;
+        }
+    }
+}
\ No newline at end of file
@@ -8,9 +8,17 @@
 package net.darkhax.bookshelf.lib;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
 import net.darkhax.bookshelf.Bookshelf;
+import net.darkhax.bookshelf.util.MathsUtils;
 import net.minecraft.util.ResourceLocation;
 import net.minecraftforge.registries.IForgeRegistryEntry;
 
@@ -18,6 +26,10 @@ import net.minecraftforge.registries.IForgeRegistryEntry;
  * This class combines the weighted random selector class with some of the features of a forge
  * registry. This hybrid enforces that all entries have a forge registry name, and allows
  * entries to be retrieved accurately using it. It does not fire forge registry events though.
+ *
+ * The registry itself is not thread safe. Other threads can read from it by using an
+ * immutable {@link Snapshot}. Changes are made on the owning thread and then made visible to
+ * readers all at once using {@link #publish()}.
  */
 public class WeightedSelectorRegistry<T extends IForgeRegistryEntry<T>> extends WeightedSelector<T> {
     
@@ -27,6 +39,27 @@ public class WeightedSelectorRegistry<T extends IForgeRegistryEntry<T>> extends
      */
     private final Map<ResourceLocation, T> REGISTRY = new HashMap<>();
     
+    /**
+     * This map holds the index of each entry in the entry list, using the entry ID as the
+     * key. This allows entries to be found and removed without searching the list.
+     */
+    private final Map<ResourceLocation, Integer> slots = new HashMap<>();
+    
+    /**
+     * The most recently published snapshot of the registry. This is read by other threads.
+     */
+    private volatile Snapshot<T> snapshot = new Snapshot<>(ImmutableList.of(), ImmutableMap.of());
+    
+    public WeightedSelectorRegistry() {
+        
+        super();
+    }
+    
+    public WeightedSelectorRegistry(boolean aliasSampling) {
+        
+        super(aliasSampling);
+    }
+    
     /**
      * Adds an entry and sets it's registry id/name at the same time.
      *
@@ -53,7 +86,9 @@ public class WeightedSelectorRegistry<T extends IForgeRegistryEntry<T>> extends
     }
     
     @Override
-    public boolean addEntry (T value, int weight) {
+    public boolean addEntry (WeightedEntry<T> entry) {
+        
+        final T value = entry.getEntry();
         
         // Prevent invalid registry attempts.
         if (value.getRegistryName() == null) {
@@ -62,11 +97,23 @@ public class WeightedSelectorRegistry<T extends IForgeRegistryEntry<T>> extends
             return false;
         }
         
-        final boolean added = super.addEntry(value, weight);
+        final ResourceLocation id = value.getRegistryName();
+        final Integer slot = this.slots.get(id);
+        
+        // Entries with an existing ID replace the old entry in it's slot.
+        if (slot != null) {
+            
+            this.setEntryAt(slot, entry);
+            this.REGISTRY.put(id, value);
+            return true;
+        }
+        
+        final boolean added = super.addEntry(entry);
         
         // If added successfully, store in backup map.
         if (added) {
-            this.REGISTRY.put(value.getRegistryName(), value);
+            this.REGISTRY.put(id, value);
+            this.slots.put(id, this.getEntries().size() - 1);
         }
         
         return added;
@@ -75,13 +122,206 @@ public class WeightedSelectorRegistry<T extends IForgeRegistryEntry<T>> extends
     @Override
     public boolean removeEntry (WeightedEntry<T> entry) {
         
-        final boolean removed = super.removeEntry(entry);
+        final ResourceLocation id = entry.getEntry().getRegistryName();
+        final Integer slot = id != null ? this.slots.get(id) : null;
+        
+        // Only remove the entry if it is the one held in the slot for it's ID.
+        if (slot != null && this.getEntries().get(slot) == entry) {
+            
+            return this.removeById(id) != null;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Removes an entry using it's registry id/name. The last entry is moved into the slot of
+     * the removed entry, so the order of entries is not kept.
+     *
+     * @param id The registry id/name of the entry to remove.
+     * @return The entry that was removed, or null if there was no entry with that id.
+     */
+    @Nullable
+    public WeightedEntry<T> removeById (ResourceLocation id) {
+        
+        final Integer slot = this.slots.remove(id);
         
-        // If removed successfully remove from backup map.
-        if (removed) {
-            this.REGISTRY.remove(entry.getEntry().getRegistryName());
+        if (slot == null) {
+            
+            return null;
+        }
+        
+        final WeightedEntry<T> removed = this.removeEntryAt(slot);
+        this.REGISTRY.remove(id);
+        
+        // The entry that was moved into the empty slot needs it's index updated.
+        if (slot < this.getEntries().size()) {
+            
+            this.slots.put(this.getEntries().get(slot).getEntry().getRegistryName(), slot);
         }
         
         return removed;
     }
-}
+    
+    /**
+     * Changes the weight of an entry using it's registry id/name.
+     *
+     * @param id The registry id/name of the entry.
+     * @param weight The new weight of the entry.
+     * @return Whether or not an entry with the id was found.
+     */
+    public boolean setWeight (ResourceLocation id, int weight) {
+        
+        final Integer slot = this.slots.get(id);
+        
+        if (slot != null) {
+            
+            this.setEntryAt(slot, new WeightedEntry<>(this.getEntries().get(slot).getEntry(), weight));
+            return true;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Updates the total weight value for the selector. This will also rebuild the ID lookups
+     * in case the entry list was changed directly.
+     *
+     * @return The new total weight.
+     */
+    @Override
+    public int updateTotal () {
+        
+        this.REGISTRY.clear();
+        this.slots.clear();
+        
+        final List<WeightedEntry<T>> entries = this.getEntries();
+        
+        for (int index = 0; index < entries.size(); index++) {
+            
+            final T value = entries.get(index).getEntry();
+            this.REGISTRY.put(value.getRegistryName(), value);
+            this.slots.put(value.getRegistryName(), index);
+        }
+        
+        return super.updateTotal();
+    }
+    
+    /**
+     * Creates an immutable snapshot of the current entries and publishes it to readers. This
+     * should be called by the owning thread once it is done making a batch of changes.
+     *
+     * @return The snapshot that was published.
+     */
+    public Snapshot<T> publish () {
+        
+        final Snapshot<T> published = new Snapshot<>(ImmutableList.copyOf(this.getEntries()), ImmutableMap.copyOf(this.REGISTRY));
+        this.snapshot = published;
+        return published;
+    }
+    
+    /**
+     * Gets the most recently published snapshot. This is safe to call from any thread, and
+     * will not see changes made since the last time {@link #publish()} was called.
+     *
+     * @return The most recently published snapshot.
+     */
+    public Snapshot<T> getSnapshot () {
+        
+        return this.snapshot;
+    }
+    
+    /**
+     * An immutable view of the registry at the time it was published. Snapshots come with a
+     * prebuilt alias table so they can be sampled from many threads without locking.
+     */
+    public static final class Snapshot<T> {
+        
+        /**
+         * The entries at the time of the snapshot.
+         */
+        private final List<WeightedEntry<T>> entries;
+        
+        /**
+         * The ID to value map at the time of the snapshot.
+         */
+        private final Map<ResourceLocation, T> registry;
+        
+        /**
+         * An alias table built from the weights of the entries.
+         */
+        private final AliasTable table;
+        
+        private Snapshot(List<WeightedEntry<T>> entries, Map<ResourceLocation, T> registry) {
+            
+            this.entries = entries;
+            this.registry = registry;
+            
+            final int[] weights = new int[entries.size()];
+            
+            for (int index = 0; index < weights.length; index++) {
+                weights[index] = entries.get(index).getWeight();
+            }
+            
+            this.table = new AliasTable(weights);
+        }
+        
+        /**
+         * Randomly selects an entry from the snapshot in constant time.
+         *
+         * @param rand An instance of random used to weight things. Each thread should use
+         *        it's own instance.
+         * @return The weighted entry that was selected.
+         */
+        @Nullable
+        public WeightedEntry<T> getRandomEntry (Random rand) {
+            
+            final int selected = this.table.sample(rand);
+            return selected >= 0 ? this.entries.get(selected) : null;
+        }
+        
+        /**
+         * Selects an entry based on a seed and a position. See
+         * {@link WeightedSelector#getEntry(long, int, int, int)}.
+         *
+         * @param worldSeed The seed of the world, or any other seed value.
+         * @param x The x position.
+         * @param y The y position.
+         * @param z The z position.
+         * @return The weighted entry that was selected.
+         */
+        @Nullable
+        public WeightedEntry<T> getEntry (long worldSeed, int x, int y, int z) {
+            
+            final int selected = this.table.sample(MathsUtils.hashPosition(worldSeed, x, y, z));
+            return selected >= 0 ? this.entries.get(selected) : null;
+        }
+        
+        /**
+         * Gets an entry using it's registry id/name.
+         *
+         * @param id The registry id/name for the entry you want.
+         * @return If the entry was found, you will get it. Otherwise you get null.
+         */
+        @Nullable
+        public T getValue (ResourceLocation id) {
+            
+            return this.registry.get(id);
+        }
+        
+        /**
+         * Gets the entries held by the snapshot. This list can not be modified.
+         *
+         * @return The entries held by the snapshot.
+         */
+        public List<WeightedEntry<T>> getEntries () {
+            
+            return this.entries;
+        }
+        
+        public int getTotalWeight () {
+            
+            return this.table.getTotalWeight();
+        }
+    }
+}
\ No newline at end of file
@@ -1,16 +1,25 @@
 package net.darkhax.bookshelf.loot.modifier;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import net.darkhax.bookshelf.Bookshelf;
+import net.darkhax.bookshelf.util.RecipeUtils;
 import net.minecraft.inventory.Inventory;
+import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraft.item.crafting.IRecipe;
 import net.minecraft.item.crafting.IRecipeType;
+import net.minecraft.item.crafting.RecipeManager;
+import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.world.storage.loot.LootContext;
 import net.minecraft.world.storage.loot.conditions.ILootCondition;
 import net.minecraftforge.common.loot.LootModifier;
@@ -29,8 +38,27 @@ public class ModifierRecipe extends LootModifier {
     public static final Function<ILootCondition[], ModifierRecipe> CAMPFIRE = conditions -> new ModifierRecipe(conditions, IRecipeType.CAMPFIRE_COOKING);
     public static final Function<ILootCondition[], ModifierRecipe> STONECUT = conditions -> new ModifierRecipe(conditions, IRecipeType.STONECUTTING);
     
+    /**
+     * The maximum amount of inputs to cache outputs for. The cache is cleared if it grows
+     * beyond this, to avoid leaking memory when many unique items are dropped.
+     */
+    private static final int MAX_CACHE_SIZE = 4096;
+    
     private final IRecipeType recipeType;
     
+    /**
+     * A cache of the possible outputs for each input. Looking up recipes is expensive, and the
+     * same items tend to be dropped over and over.
+     */
+    private final Map<CacheKey, List<ItemStack>> outputCache = new ConcurrentHashMap<>();
+    
+    /**
+     * The recipe map that the cache was built from. The recipe manager replaces this map when
+     * recipes are reloaded, so the cache is cleared when this changes.
+     */
+    @Nullable
+    private volatile Map<?, ?> cachedRecipes;
+    
     public ModifierRecipe(ILootCondition[] conditions, IRecipeType type) {
         
         super(conditions);
@@ -48,21 +76,33 @@ public class ModifierRecipe extends LootModifier {
         
         try {
             
-            final List<IRecipe> matchingRecipes = ctx.getWorld().getRecipeManager().getRecipes(this.recipeType, new Inventory(stack), ctx.getWorld());
+            final RecipeManager manager = ctx.getWorld().getRecipeManager();
             
-            if (!matchingRecipes.isEmpty()) {
+            if (this.cachedRecipes != manager.recipes) {
                 
-                final IRecipe recipe = matchingRecipes.get(ctx.getWorld().rand.nextInt(matchingRecipes.size()));
+                this.outputCache.clear();
+                this.cachedRecipes = manager.recipes;
+            }
+            
+            // The key borrows the tag of the stack, it is only copied when the key is stored.
+            final CacheKey key = new CacheKey(stack.getItem(), stack.getTag());
+            List<ItemStack> outputs = this.outputCache.get(key);
+            
+            if (outputs == null) {
                 
-                if (recipe != null) {
-                    
-                    final ItemStack output = recipe.getRecipeOutput();
+                outputs = this.getOutputs(stack, ctx);
+                
+                if (this.outputCache.size() >= MAX_CACHE_SIZE) {
                     
-                    if (output != null && !output.isEmpty()) {
-                        
-                        return output;
-                    }
+                    this.outputCache.clear();
                 }
+                
+                this.outputCache.put(key.copy(), outputs);
+            }
+            
+            if (!outputs.isEmpty()) {
+                
+                return outputs.get(ctx.getWorld().rand.nextInt(outputs.size())).copy();
             }
         }
         
@@ -74,4 +114,81 @@ public class ModifierRecipe extends LootModifier {
         
         return stack;
     }
+    
+    /**
+     * Finds the possible outputs for an input by checking the candidate recipes for it's item.
+     *
+     * @param stack The input to find outputs for.
+     * @param ctx The loot context.
+     * @return A list of copies of every possible output.
+     */
+    private List<ItemStack> getOutputs (ItemStack stack, LootContext ctx) {
+        
+        final List<IRecipe> matchingRecipes = RecipeUtils.findMatchingRecipes(ctx.getWorld().getRecipeManager(), this.recipeType, stack.getItem(), new Inventory(stack), ctx.getWorld());
+        final List<ItemStack> outputs = new ArrayList<>();
+        
+        for (final IRecipe recipe : matchingRecipes) {
+            
+            if (recipe != null) {
+                
+                final ItemStack output = recipe.getRecipeOutput();
+                
+                if (output != null && !output.isEmpty()) {
+                    
+                    outputs.add(output.copy());
+                }
+            }
+        }
+        
+        return outputs;
+    }
+    
+    /**
+     * A cache key for an input stack. Inputs are equal if they have the same item and NBT. A
+     * key may share the tag of a stack, so keys must be copied before they are stored.
+     */
+    private static final class CacheKey {
+        
+        private final Item item;
+        
+        @Nullable
+        private final CompoundNBT tag;
+        
+        private final int hash;
+        
+        private CacheKey(Item item, @Nullable CompoundNBT tag) {
+            
+            this.item = item;
+            this.tag = tag;
+            this.hash = 31 * this.item.hashCode() + Objects.hashCode(this.tag);
+        }
+        
+        /**
+         * Creates a copy of the key with it's own copy of the tag, so it is safe to store.
+         *
+         * @return A copy of the key.
+         */
+        private CacheKey copy () {
+            
+            return this.tag != null ? new CacheKey(this.item, this.tag.copy()) : this;
+        }
+        
+        @Override
+        public boolean equals (Object obj) {
+            
+            if (obj instanceof CacheKey) {
+                
+                final CacheKey other = (CacheKey) obj;
+                return this.item == other.item && Objects.equals(this.tag, other.tag);
+            }
+            
+            return false;
+        }
+        
+        @Override
+        public int hashCode () {
+            
+            return this.hash;
+        }
+    }
 }
\ No newline at end of file
@@ -73,6 +73,74 @@ public final class MathsUtils {
         return rand.nextInt(max - min + 1) + min;
     }
     
+    /**
+     * Used to retrieve a random long between zero and the provided bound. This is a long
+     * equivalent of {@link Random#nextInt(int)}, and is not biased towards any values.
+     *
+     * @param rand An instance of random.
+     * @param bound The upper bound for the value. This value is not a possible outcome and
+     *        must be positive.
+     * @return A long between zero and the bound.
+     */
+    public static long nextLong (Random rand, long bound) {
+        
+        if (bound <= 0) {
+            
+            throw new IllegalArgumentException("The bound must be positive! Got " + bound);
+        }
+        
+        if (bound <= Integer.MAX_VALUE) {
+            
+            return rand.nextInt((int) bound);
+        }
+        
+        long bits;
+        long value;
+        
+        // Values from the incomplete final range are rejected to keep the result uniform.
+        do {
+            
+            bits = rand.nextLong() >>> 1;
+            value = bits % bound;
+        }
+        while (bits - value + (bound - 1) < 0L);
+        
+        return value;
+    }
+    
+    /**
+     * Hashes a world seed and a position into a well distributed long. The same inputs will
+     * always give the same output, so this can be used in place of a Random when the result
+     * should only depend on the position. The hash is based on the SplitMix64 mixer.
+     *
+     * @param seed The world seed, or any other seed value.
+     * @param x The x position.
+     * @param y The y position.
+     * @param z The z position.
+     * @return A hash of the seed and position.
+     */
+    public static long hashPosition (long seed, int x, int y, int z) {
+        
+        long hash = mix64(seed + 0x9E3779B97F4A7C15L);
+        hash = mix64(hash + x * 0x9E3779B97F4A7C15L);
+        hash = mix64(hash + y * 0xC2B2AE3D27D4EB4FL);
+        return mix64(hash + z * 0x165667B19E3779F9L);
+    }
+    
+    /**
+     * The finalizer step of SplitMix64. Every bit of the input affects every bit of the
+     * output.
+     *
+     * @param value The value to mix.
+     * @return The mixed value.
+     */
+    public static long mix64 (long value) {
+        
+        value = (value ^ value >>> 30) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ value >>> 27) * 0x94D049BB133111EBL;
+        return value ^ value >>> 31;
+    }
+    
     /**
      * A method which handles the calculating of percentages. While this isn't a particularly
      * difficult piece of code, it has been added for the sake of simplicity.
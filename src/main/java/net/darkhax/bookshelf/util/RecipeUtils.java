@@ -7,18 +7,27 @@
  */
 package net.darkhax.bookshelf.util;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.stream.Collectors;
 
 import javax.annotation.Nullable;
 
+import com.google.common.collect.Sets;
+
 import net.darkhax.bookshelf.Bookshelf;
 import net.minecraft.inventory.IInventory;
 import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
 import net.minecraft.item.crafting.IRecipe;
 import net.minecraft.item.crafting.IRecipeType;
 import net.minecraft.item.crafting.Ingredient;
@@ -29,6 +38,12 @@ import net.minecraft.world.World;
 
 public final class RecipeUtils {
     
+    /**
+     * Input indexes for each recipe manager. Managers are held weakly so old managers can
+     * still be garbage collected. Access to this map must be synchronized.
+     */
+    private static final Map<RecipeManager, RecipeIndex> recipeIndexes = new WeakHashMap<>();
+    
     /**
      * Gets the active recipe manager. One the client this is updated from the recipe updated
      * event. On the server this is updated when the server first launches and when it is
@@ -126,4 +141,182 @@ public final class RecipeUtils {
         
         return Ingredient.fromItems(Arrays.stream(tags).flatMap(t -> t.getAllElements().stream()).toArray(Item[]::new));
     }
+    
+    /**
+     * Gets the recipes of a type which could use an item as an input. This uses an index of
+     * the items in each recipe's ingredients, which is built the first time a recipe type is
+     * looked up and rebuilt after recipes are reloaded. Recipes which can not be indexed, such
+     * as recipes with non-simple ingredients or no ingredients, are always included. The
+     * returned recipes still need to be checked with {@link IRecipe#matches(IInventory, World)}.
+     * 
+     * @param <C> The inventory type of the recipe.
+     * @param <T> The type of the recipe.
+     * @param manager An instance of the recipe manager.
+     * @param recipeType The recipe type you want to get.
+     * @param input The item to find recipes for.
+     * @return An unmodifiable list of recipes which could use the item.
+     */
+    @SuppressWarnings("unchecked")
+    public static <C extends IInventory, T extends IRecipe<C>> List<T> getCandidateRecipes (RecipeManager manager, IRecipeType<T> recipeType, Item input) {
+        
+        RecipeIndex index;
+        
+        synchronized (recipeIndexes) {
+            
+            index = recipeIndexes.get(manager);
+            
+            // The recipe manager replaces it's map of recipes when recipes are reloaded.
+            if (index == null || index.recipes != manager.recipes) {
+                
+                index = new RecipeIndex(manager.recipes);
+                recipeIndexes.put(manager, index);
+            }
+        }
+        
+        return (List<T>) index.getTypeIndex(recipeType).getCandidates(input);
+    }
+    
+    /**
+     * Finds the recipes of a type which match an inventory. This is the same as
+     * {@link RecipeManager#getRecipes(IRecipeType, IInventory, World)}, but only the
+     * candidate recipes for the input item are checked. See
+     * {@link #getCandidateRecipes(RecipeManager, IRecipeType, Item)}.
+     * 
+     * @param <C> The inventory type of the recipe.
+     * @param <T> The type of the recipe.
+     * @param manager An instance of the recipe manager.
+     * @param recipeType The recipe type you want to get.
+     * @param input The item used to find candidate recipes, usually the main input.
+     * @param inventory The inventory to match recipes against.
+     * @param world The world to match recipes in.
+     * @return A list of recipes which match the inventory.
+     */
+    public static <C extends IInventory, T extends IRecipe<C>> List<T> findMatchingRecipes (RecipeManager manager, IRecipeType<T> recipeType, Item input, C inventory, World world) {
+        
+        final List<T> matches = new ArrayList<>();
+        
+        for (final T recipe : getCandidateRecipes(manager, recipeType, input)) {
+            
+            if (recipe.matches(inventory, world)) {
+                
+                matches.add(recipe);
+            }
+        }
+        
+        return matches;
+    }
+    
+    /**
+     * An index of recipe inputs for a single recipe map. Recipe types are indexed the first
+     * time they are used.
+     */
+    private static final class RecipeIndex {
+        
+        /**
+         * The recipe map this index was built from.
+         */
+        private final Map<IRecipeType<?>, Map<ResourceLocation, IRecipe<?>>> recipes;
+        
+        /**
+         * The index for each recipe type that has been used.
+         */
+        private final Map<IRecipeType<?>, TypeIndex> types = new HashMap<>();
+        
+        private RecipeIndex(Map<IRecipeType<?>, Map<ResourceLocation, IRecipe<?>>> recipes) {
+            
+            this.recipes = recipes;
+        }
+        
+        private synchronized TypeIndex getTypeIndex (IRecipeType<?> recipeType) {
+            
+            return this.types.computeIfAbsent(recipeType, type -> new TypeIndex(this.recipes.getOrDefault(type, Collections.emptyMap()).values()));
+        }
+    }
+    
+    /**
+     * An index of the items used by the recipes of one recipe type.
+     */
+    private static final class TypeIndex {
+        
+        /**
+         * The candidate recipes for each indexed item. Every list also includes the fallback
+         * recipes.
+         */
+        private final Map<Item, List<IRecipe<?>>> candidates = new HashMap<>();
+        
+        /**
+         * Recipes which could not be indexed, and must be checked for every item.
+         */
+        private final List<IRecipe<?>> fallback = new ArrayList<>();
+        
+        /**
+         * An unmodifiable view of {@link #fallback}, used for items that are not indexed.
+         */
+        private final List<IRecipe<?>> fallbackView = Collections.unmodifiableList(this.fallback);
+        
+        private TypeIndex(Collection<IRecipe<?>> recipes) {
+            
+            final Map<Item, List<IRecipe<?>>> indexed = new HashMap<>();
+            
+            for (final IRecipe<?> recipe : recipes) {
+                
+                final Set<Item> items = getIndexedItems(recipe);
+                
+                if (items == null) {
+                    
+                    this.fallback.add(recipe);
+                }
+                
+                else {
+                    
+                    for (final Item item : items) {
+                        
+                        indexed.computeIfAbsent(item, key -> new ArrayList<>()).add(recipe);
+                    }
+                }
+            }
+            
+            for (final Entry<Item, List<IRecipe<?>>> entry : indexed.entrySet()) {
+                
+                final List<IRecipe<?>> itemCandidates = entry.getValue();
+                itemCandidates.addAll(this.fallback);
+                this.candidates.put(entry.getKey(), Collections.unmodifiableList(itemCandidates));
+            }
+        }
+        
+        private List<IRecipe<?>> getCandidates (Item item) {
+            
+            return this.candidates.getOrDefault(item, this.fallbackView);
+        }
+        
+        /**
+         * Gets the items used by the ingredients of a recipe.
+         * 
+         * @param recipe The recipe to read.
+         * @return The items used by the recipe, or null if the recipe can not be indexed.
+         */
+        @Nullable
+        private static Set<Item> getIndexedItems (IRecipe<?> recipe) {
+            
+            final Set<Item> items = Sets.newIdentityHashSet();
+            
+            for (final Ingredient ingredient : recipe.getIngredients()) {
+                
+                // Vanilla ingredients only check the item, so their matching stacks hold
+                // every item they accept. Other non-simple ingredients may accept items that
+                // are not in their matching stacks, so they can not be indexed.
+                if (!ingredient.isVanilla() && !ingredient.isSimple()) {
+                    
+                    return null;
+                }
+                
+                for (final ItemStack stack : ingredient.getMatchingStacks()) {
+                    
+                    items.add(stack.getItem());
+                }
+            }
+            
+            return items.isEmpty() ? null : items;
+        }
+    }
 }
\ No newline at end of file
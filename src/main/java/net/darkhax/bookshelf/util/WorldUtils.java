@@ -9,8 +9,13 @@ package net.darkhax.bookshelf.util;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 
+import com.google.common.collect.Sets;
+
+import net.darkhax.bookshelf.crafting.block.BlockIngredient;
 import net.minecraft.block.BlockState;
 import net.minecraft.entity.LivingEntity;
 import net.minecraft.entity.player.PlayerEntity;
@@ -21,8 +26,11 @@ import net.minecraft.util.SharedSeedRandom;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.BlockPos.Mutable;
 import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.palette.IPalette;
+import net.minecraft.util.palette.IdentityPalette;
 import net.minecraft.world.World;
 import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkSection;
 import net.minecraft.world.server.ServerWorld;
 import net.minecraft.world.storage.loot.LootTableManager;
 
@@ -169,4 +177,132 @@ public final class WorldUtils {
         
         return depth;
     }
+    
+    /**
+     * Searches a region of the world for blocks that match an ingredient. See
+     * {@link #findBlocks(World, BlockPos, BlockPos, Predicate, Consumer)}.
+     * 
+     * @param world The world to search.
+     * @param from One corner of the region.
+     * @param to The opposite corner of the region.
+     * @param ingredient The ingredient to match blocks against.
+     * @param callback A callback for each matching position.
+     * @return The amount of matching positions that were found.
+     */
+    public static int findBlocks (World world, BlockPos from, BlockPos to, BlockIngredient ingredient, Consumer<BlockPos> callback) {
+        
+        return findBlocks(world, from, to, state -> ingredient.test(state.getBlock()), callback);
+    }
+    
+    /**
+     * Searches a region of the world for block states that match a predicate. Only chunks
+     * which are already loaded are searched. The states in the palette of each chunk section
+     * are checked before any positions are read, so sections without a matching state are
+     * skipped entirely. Empty sections are always skipped, so this can not be used to find
+     * air.
+     * 
+     * The position given to the callback is mutable and is reused for every match. Use
+     * {@link BlockPos#toImmutable()} if the position needs to be kept.
+     * 
+     * @param world The world to search.
+     * @param from One corner of the region.
+     * @param to The opposite corner of the region.
+     * @param statePredicate The predicate to match states against. This is only tested once
+     *        for each state in a section's palette, unless the section uses the global
+     *        palette, in which case it is tested for every position.
+     * @param callback A callback for each matching position.
+     * @return The amount of matching positions that were found.
+     */
+    public static int findBlocks (World world, BlockPos from, BlockPos to, Predicate<BlockState> statePredicate, Consumer<BlockPos> callback) {
+        
+        final int minX = Math.min(from.getX(), to.getX());
+        final int minY = Math.max(Math.min(from.getY(), to.getY()), 0);
+        final int minZ = Math.min(from.getZ(), to.getZ());
+        final int maxX = Math.max(from.getX(), to.getX());
+        final int maxY = Math.min(Math.max(from.getY(), to.getY()), world.getHeight() - 1);
+        final int maxZ = Math.max(from.getZ(), to.getZ());
+        
+        final BlockPos.Mutable pos = new BlockPos.Mutable();
+        final Set<BlockState> matchingStates = Sets.newIdentityHashSet();
+        int found = 0;
+        
+        for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+            
+            for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+                
+                final Chunk chunk = world.getChunkProvider().getChunk(chunkX, chunkZ, false);
+                
+                if (chunk == null) {
+                    
+                    continue;
+                }
+                
+                final int startX = Math.max(minX, chunkX << 4);
+                final int startZ = Math.max(minZ, chunkZ << 4);
+                final int endX = Math.min(maxX, (chunkX << 4) + 15);
+                final int endZ = Math.min(maxZ, (chunkZ << 4) + 15);
+                
+                for (final ChunkSection section : chunk.getSections()) {
+                    
+                    if (ChunkSection.isEmpty(section)) {
+                        
+                        continue;
+                    }
+                    
+                    final int sectionY = section.getYLocation();
+                    final int startY = Math.max(minY, sectionY);
+                    final int endY = Math.min(maxY, sectionY + 15);
+                    
+                    if (startY > endY) {
+                        
+                        continue;
+                    }
+                    
+                    // Sections using the global palette can hold any state, so every position
+                    // has to be tested. Otherwise each state in the palette is tested once,
+                    // and if none of them match the positions do not need to be read.
+                    final IPalette<BlockState> palette = section.getData().palette;
+                    final boolean testPositions = palette instanceof IdentityPalette;
+                    
+                    if (!testPositions) {
+                        
+                        matchingStates.clear();
+                        BlockState state;
+                        
+                        for (int id = 0; (state = palette.get(id)) != null; id++) {
+                            
+                            if (statePredicate.test(state)) {
+                                
+                                matchingStates.add(state);
+                            }
+                        }
+                        
+                        if (matchingStates.isEmpty()) {
+                            
+                            continue;
+                        }
+                    }
+                    
+                    for (int y = startY; y <= endY; y++) {
+                        
+                        for (int z = startZ; z <= endZ; z++) {
+                            
+                            for (int x = startX; x <= endX; x++) {
+                                
+                                final BlockState state = section.getBlockState(x & 15, y & 15, z & 15);
+                                
+                                if (testPositions ? statePredicate.test(state) : matchingStates.contains(state)) {
+                                    
+                                    found++;
+                                    callback.accept(pos.setPos(x, y, z));
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        
+        return found;
+    }
 }
\ No newline at end of file